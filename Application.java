@@ -7,15 +7,10 @@
 * @date Created on 22 October 2023
 */
 
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
-
 public class Application {
-    private String slotID;
-    private BooleanProperty occupied;
-    private ObjectProperty<Car> parkedCar;
+    private final String slotID;
+    private boolean occupied;
+    private Car parkedCar;
     
     /**
      * Initializes a new parking slot with the provided slot identifier.
@@ -25,8 +20,8 @@ public class Application {
     // Constructor to initialize the parking slot
     public Application(String slotID) {
         this.slotID = slotID;// Initialize the slot ID
-        this.occupied = new SimpleBooleanProperty(false);// Initialize as unoccupied
-        this.parkedCar = new SimpleObjectProperty<>(null);// Initialize with no parked car
+        this.occupied = false;// Initialize as unoccupied
+        this.parkedCar = null;// Initialize with no parked car
     }
 
     /**
@@ -45,16 +40,12 @@ public class Application {
      * @return True if the parking slot is occupied; otherwise, false.
      */
     // Getter method to check if the parking slot is occupied
-    public BooleanProperty occupiedProperty() {
-        return occupied;
-    }
-    
     public boolean isOccupied() {
-        return occupied.get();
+        return occupied;
     }
 
     public void setOccupied(boolean occupied) {
-        this.occupied.set(occupied);
+        this.occupied = occupied;
     }
     
     /**
@@ -62,13 +53,10 @@ public class Application {
      *
      * @return The parked car or null if the slot is empty.
      */
-    public ObjectProperty<Car> parkedCarProperty() {
-        return parkedCar;
-    }
     
     // Getter method to retrieve the parked car
     public Car getParkedCar() {
-        return parkedCar.get();
+        return parkedCar;
     }
 
     /**
@@ -78,9 +66,9 @@ public class Application {
      */
     // Method to park a car in the slot
     public void parkCar(Car car) {
-        if (!occupied.get()) {
-            parkedCar.set(car);// Set the parked car
-            occupied.set(true);
+        if (!occupied) {
+            parkedCar = car;// Set the parked car
+            occupied = true;
         } else {
             System.out.println("Parking slot is already occupied.");
         }
@@ -91,9 +79,9 @@ public class Application {
      */
     // Method to remove a car from the slot
     public void removeCar() {
-        if (occupied.get()) {
-            parkedCar.set(null); // Remove the parked car reference
-            occupied.set(false); // Mark the slot as unoccupied
+        if (occupied) {
+            parkedCar = null; // Remove the parked car reference
+            occupied = false; // Mark the slot as unoccupied
         } else {
             System.out.println("Parking slot is already empty.");
         }
@@ -102,8 +90,8 @@ public class Application {
     // Override toString() to provide a better representation of the ParkingSlot
     @Override
     public String toString() {
-        String status = occupied.get() ? "Occupied" : "Empty";
-        String carInfo = occupied.get() ? parkedCar.get().toString() : "No car parked";
+        String status = occupied ? "Occupied" : "Empty";
+        String carInfo = occupied ? parkedCar.toString() : "No car parked";
 
         return "ParkingSlot{" +
                 "slotID='" + slotID + '\'' +
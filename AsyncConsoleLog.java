@@ -0,0 +1,127 @@
+/**
+* This class is a CarParkLog that prints messages to the console on its own
+* thread. Callers only put the message into a fixed-size ring buffer, so a gate
+* never waits on the console; if the buffer is full the message is dropped and
+* counted instead of holding the gate up.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AsyncConsoleLog implements CarParkLog, Closeable {
+    private static final int MAX_BATCH = 1024; // Most messages printed per flush
+
+    private final Level threshold; // Lowest level that is printed
+    private final PrintStream out;
+    private final BlockingQueue<String> buffer; // Ring buffer of messages waiting to be printed
+    private final LongAdder dropped; // Messages lost because the buffer was full
+    private final Thread printer; // Prints buffered messages in batches
+    private volatile boolean running;
+
+    /**
+     * Creates a log that prints to standard output.
+     *
+     * @param threshold The lowest level to print.
+     * @param capacity  The most messages that may wait to be printed.
+     */
+    public AsyncConsoleLog(Level threshold, int capacity) {
+        this(threshold, capacity, System.out);
+    }
+
+    /**
+     * Creates a log that prints to the given stream.
+     *
+     * @param threshold The lowest level to print.
+     * @param capacity  The most messages that may wait to be printed.
+     * @param out       Where to print.
+     */
+    public AsyncConsoleLog(Level threshold, int capacity, PrintStream out) {
+        this.threshold = threshold;
+        this.out = out;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.dropped = new LongAdder();
+        running = true;
+        printer = new Thread(this::printLoop, "carpark-log");
+        printer.setDaemon(true);
+        printer.start();
+    }
+
+    @Override
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    @Override
+    public void write(Level level, String message) {
+        if (!buffer.offer(message)) {
+            dropped.increment(); // Never make the caller wait for the console
+        }
+    }
+
+    /**
+     * Gets the number of messages dropped because the buffer was full.
+     *
+     * @return The dropped message count.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Prints every buffered message and stops the printing thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            printer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String message;
+        while ((message = buffer.poll()) != null) {
+            out.println(message); // Written just as the log closed, after the printer stopped
+        }
+        out.flush();
+    }
+
+    // Printing thread: waits for a message, then prints it with everything buffered behind it
+    private void printLoop() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        StringBuilder text = new StringBuilder();
+        long reportedDrops = 0;
+        while (running || !buffer.isEmpty()) {
+            try {
+                String first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    buffer.drainTo(batch, MAX_BATCH - 1);
+                    for (String message : batch) {
+                        text.append(message).append(System.lineSeparator());
+                    }
+                    out.print(text); // One write to the console for the whole batch
+                    batch.clear();
+                    text.setLength(0);
+                }
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    out.println("(" + (drops - reportedDrops) + " log messages dropped)");
+                    reportedDrops = drops;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        out.flush();
+    }
+}
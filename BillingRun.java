@@ -0,0 +1,113 @@
+/**
+* This class holds the result of billing every parked car at one moment, as
+* columns: slot IDs, registration numbers, entry times and fees, one row per
+* car. CarPark.billOccupiedSlots fills the columns in one pass over the slot
+* store and prices them with a single Tariff.bill call.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+public final class BillingRun {
+    private final long billedAtMillis;
+    private final int count;
+    private final String[] slotIDs;
+    private final String[] registrationNumbers;
+    private final long[] entryMillis;
+    private final long[] feesCents;
+    private final long totalCents;
+
+    // Only created by CarPark, which hands over the arrays it filled
+    BillingRun(long billedAtMillis, int count, String[] slotIDs, String[] registrationNumbers,
+            long[] entryMillis, long[] feesCents, long totalCents) {
+        this.billedAtMillis = billedAtMillis;
+        this.count = count;
+        this.slotIDs = slotIDs;
+        this.registrationNumbers = registrationNumbers;
+        this.entryMillis = entryMillis;
+        this.feesCents = feesCents;
+        this.totalCents = totalCents;
+    }
+
+    /**
+     * Gets the time the cars were billed to.
+     *
+     * @return The billing time in epoch milliseconds.
+     */
+    public long getBilledAtMillis() {
+        return billedAtMillis;
+    }
+
+    /**
+     * Gets the number of cars billed.
+     *
+     * @return The number of rows.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the slot a billed car was parked in.
+     *
+     * @param row The row, from 0 to getCount() - 1.
+     * @return The slot ID.
+     */
+    public String getSlotID(int row) {
+        checkRow(row);
+        return slotIDs[row];
+    }
+
+    /**
+     * Gets the registration number of a billed car.
+     *
+     * @param row The row, from 0 to getCount() - 1.
+     * @return The registration number.
+     */
+    public String getRegistrationNumber(int row) {
+        checkRow(row);
+        return registrationNumbers[row];
+    }
+
+    /**
+     * Gets the time a billed car parked.
+     *
+     * @param row The row, from 0 to getCount() - 1.
+     * @return The entry time in epoch milliseconds.
+     */
+    public long getEntryMillis(int row) {
+        checkRow(row);
+        return entryMillis[row];
+    }
+
+    /**
+     * Gets the fee owed by a billed car.
+     *
+     * @param row The row, from 0 to getCount() - 1.
+     * @return The fee in cents.
+     */
+    public long getFeeCents(int row) {
+        checkRow(row);
+        return feesCents[row];
+    }
+
+    /**
+     * Gets the fees owed by every billed car together.
+     *
+     * @return The total in cents.
+     */
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BillingRun{cars=" + count + ", total=" + String.format("$%d.%02d", totalCents / 100, totalCents % 100) + '}';
+    }
+}
@@ -5,17 +5,21 @@
 * @date Created on 22 October 2023
 */
 
-import javafx.beans.property.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 public class Car {
-    private StringProperty registrationNumber;
-    private StringProperty make;
-    private StringProperty model;
-    private StringProperty year;
-    private BooleanProperty isParked; // New property to track whether the car is parked
-    private String parkingTime; // String to store the parking time
+    // Shared, thread-safe formatter used only when a parking time is displayed
+    private static final DateTimeFormatter PARKING_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final String registrationNumber;
+    private final String make;
+    private final String model;
+    private final String year;
+    private volatile boolean isParked; // Flag to track whether the car is parked
+    private volatile long parkedAtMillis; // Epoch milliseconds at which the car was parked
 
     /**
      * Initializes a new Car object with the provided registration number, make, model, and year.
@@ -26,11 +30,11 @@ public class Car {
      * @param year               The manufacturing year of the car.
      */
     public Car(String registrationNumber, String make, String model, String year) {
-        this.registrationNumber = new SimpleStringProperty(registrationNumber);
-        this.make = new SimpleStringProperty(make);
-        this.model = new SimpleStringProperty(model);
-        this.year = new SimpleStringProperty(year);
-        this.isParked = new SimpleBooleanProperty(false);
+        this.registrationNumber = registrationNumber;
+        this.make = make;
+        this.model = model;
+        this.year = year;
+        this.isParked = false;
     }
 
     /**
@@ -40,32 +44,35 @@ public class Car {
      */
     // Getter and setter methods for isParked
     public boolean isParked() {
-        return isParked.get();
-    }
-
-    public BooleanProperty isParkedProperty() {
         return isParked;
     }
 
     public void setParked(boolean parked) {
-        this.isParked.set(parked);
+        this.isParked = parked;
     }
 
     /**
      * Marks the car as parked and records the current parking time.
      */
     public void park() {
-        isParked.set(true);
-        // Record the current time when parking
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        parkingTime = dateFormat.format(new Date());
+        park(System.currentTimeMillis()); // Record the current time when parking
+    }
+
+    /**
+     * Marks the car as parked at a given time, for example when a saved car park is restored.
+     *
+     * @param parkedAtMillis The parking time in epoch milliseconds.
+     */
+    public void park(long parkedAtMillis) {
+        isParked = true;
+        this.parkedAtMillis = parkedAtMillis;
     }
 
     /**
      * Marks the car as not parked (i.e., unparked).
      */
     public void unpark() {
-        isParked.set(false);
+        isParked = false;
     }
 
     /**
@@ -74,10 +81,6 @@ public class Car {
      * @return The registration number.
      */
     public String getRegistrationNumber() {
-        return registrationNumber.get();
-    }
-
-    public StringProperty registrationNumberProperty() {
         return registrationNumber;
     }
 
@@ -87,10 +90,6 @@ public class Car {
      * @return The make of the car.
      */
     public String getMake() {
-        return make.get();
-    }
-
-    public StringProperty makeProperty() {
         return make;
     }
 
@@ -100,10 +99,6 @@ public class Car {
      * @return The model of the car.
      */
     public String getModel() {
-        return model.get();
-    }
-
-    public StringProperty modelProperty() {
         return model;
     }
 
@@ -113,30 +108,38 @@ public class Car {
      * @return The manufacturing year of the car.
      */
     public String getYear() {
-        return year.get();
+        return year;
     }
 
-    public StringProperty yearProperty() {
-        return year;
+    /**
+     * Gets the time at which the car was parked.
+     *
+     * @return The parking time in epoch milliseconds, or 0 if the car has never been parked.
+     */
+    public long getParkedAtMillis() {
+        return parkedAtMillis;
     }
 
     /**
-     * Gets the parking time timestamp for the car.
+     * Gets how long the car has been parked, measured against the given time.
      *
-     * @return The parking time timestamp in the format "yyyy-MM-dd HH:mm:ss".
+     * @param nowMillis The current time in epoch milliseconds.
+     * @return The parking duration in milliseconds.
      */
-    public String getParkingTime() {
-        return parkingTime;
+    public long getParkedDurationMillis(long nowMillis) {
+        return nowMillis - parkedAtMillis;
     }
-    
+
     /**
-     * Converts a StringProperty to a regular String.
+     * Gets the parking time timestamp for the car, formatted for display.
      *
-     * @param stringProperty The StringProperty to convert.
-     * @return The String value.
+     * @return The parking time timestamp in the format "yyyy-MM-dd HH:mm:ss", or null if the car has never been parked.
      */
-    private String convertStringPropertyToString(StringProperty stringProperty) {
-        return stringProperty.get();
+    public String getParkingTime() {
+        if (parkedAtMillis == 0) {
+            return null;
+        }
+        return PARKING_TIME_FORMAT.format(Instant.ofEpochMilli(parkedAtMillis));
     }
     
     @Override
@@ -5,126 +5,382 @@
 * @date Created on 22 October 2023
 */
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableMap;
-import javafx.collections.ObservableSet;
-import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.SimpleStringProperty;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
 import java.util.AbstractMap;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+/*
+ * CarPark is safe to share between several entry and exit gates. Each ParkingSlot
+ * is its own lock, so gates working on different slots never wait on each other,
+ * and a registration number is claimed in slotsByRegistration with putIfAbsent
+ * before the slot is taken, so the same car can never be parked twice.
+ *
+ * parkingSlots and slotsByRegistration are the only record of which slot IDs and
+ * registration numbers are in use: a slot ID is claimed with putIfAbsent when the
+ * slot is added and released when it is deleted, and a registration number is
+ * released when the car leaves. Every other structure (the slot store, the make,
+ * model and year indexes and the free queues) is changed under the same slot lock,
+ * so the car park holds a fixed amount of state per live slot and parked car.
+ */
 public class CarPark {
-    private ObservableMap<String, ParkingSlot> parkingSlots; // ObservableMap to store parking slots by ID
-    private ObservableSet<String> usedSlotNumbers; // ObservableSet to track used slot numbers
-    private ObservableSet<String> parkedCarRegistrationNumbers; // ObservableSet to track parked cars by registration number
+    private static final int EVENT_BUFFER_CAPACITY = 1024; // Events buffered per subscriber before they are dropped
+    static final int MAX_FIELD_BYTES = 0xfffe; // Longest slot ID or car detail, in UTF-8 bytes, that the journal and history can store
+
+    private Map<String, ParkingSlot> parkingSlots; // Concurrent map to store parking slots by ID
+    private SlotStore slotStore; // Dense, array-backed store of the slots and their occupancy
+    private Map<String, ParkingSlot> slotsByRegistration; // Index of parked cars' registration numbers to the slot they occupy
+    private SlotIndex slotsByMake; // Index of parked cars' makes to the slots they occupy
+    private SlotIndex slotsByModel; // Index of parked cars' models to the slots they occupy
+    private SlotIndex slotsByYear; // Index of parked cars' years to the slots they occupy
+    private Map<String, Queue<ParkingSlot>> freeSlotsByZone; // Lock-free queues of free slots, one per zone
+    private List<CarParkListener> listeners; // Listeners notified of slot and car changes
+    private volatile CarParkLog log; // Where messages go; nothing is printed on the gate's thread
+    private final CarParkMetrics metrics; // Live counters and latency histograms
+    private volatile CarParkEventPublisher eventPublisher; // Typed event stream, created when first asked for
 
     /**
      * Constructs a new CarPark object. Initializes the data structures for parking slots and tracking.
      */
     public CarPark() {
-        parkingSlots = FXCollections.observableHashMap(); // Initialize the parkingSlots map as an ObservableMap
-        usedSlotNumbers = FXCollections.observableSet(); // Initialize the usedSlotNumbers set as an ObservableSet
-        parkedCarRegistrationNumbers = FXCollections.observableSet(); // Initialize the parkedCarRegistrationNumbers set as an ObservableSet
+        parkingSlots = new ConcurrentHashMap<>(); // Initialize the parkingSlots map as a ConcurrentHashMap
+        slotStore = new SlotStore(); // Initialize the slot store
+        slotsByRegistration = new ConcurrentHashMap<>(); // Initialize the registration index as a ConcurrentHashMap
+        slotsByMake = new SlotIndex(); // Initialize the make, model and year indexes
+        slotsByModel = new SlotIndex();
+        slotsByYear = new SlotIndex();
+        freeSlotsByZone = new ConcurrentHashMap<>(); // Initialize the free-slot queues
+        listeners = new CopyOnWriteArrayList<>(); // Initialize the listener list, cheap to iterate on every change
+        log = CarParkLog.NONE; // No messages until a log is set
+        metrics = new CarParkMetrics(slotStore); // Initialize the live metrics, reading occupancy from the slot store
+    }
+
+    /**
+     * Gets the car park's live metrics: park and departure counts, rates and latencies, and occupancy.
+     *
+     * @return The metrics, updated as gates work.
+     */
+    public CarParkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Subscribes to the car park's changes as a stream of CarParkEvents. Subscribers are
+     * fed on a background thread with a bounded buffer each, so a slow subscriber misses
+     * events rather than holding up the gates.
+     *
+     * @param subscriber The subscriber.
+     */
+    public void subscribe(Flow.Subscriber<? super CarParkEvent> subscriber) {
+        getEventPublisher().subscribe(subscriber);
+    }
+
+    /**
+     * Gets the publisher of the car park's event stream, creating it on first use.
+     *
+     * @return The event publisher.
+     */
+    public CarParkEventPublisher getEventPublisher() {
+        CarParkEventPublisher publisher = eventPublisher;
+        if (publisher == null) {
+            synchronized (this) {
+                publisher = eventPublisher;
+                if (publisher == null) {
+                    publisher = CarParkEventPublisher.create(this, EVENT_BUFFER_CAPACITY); // Starts listening from here on
+                    eventPublisher = publisher;
+                }
+            }
+        }
+        return publisher;
+    }
+
+    /**
+     * Closes the car park's event stream, if one was started. Every subscriber is told the
+     * stream is complete once it has received the events already buffered for it; a later
+     * subscribe starts a new stream.
+     */
+    public void closeEventPublisher() {
+        CarParkEventPublisher publisher;
+        synchronized (this) {
+            publisher = eventPublisher;
+            eventPublisher = null;
+        }
+        if (publisher != null) {
+            publisher.close();
+        }
+    }
+
+    /**
+     * Sets where the car park sends its messages about parking, removing and deleting.
+     *
+     * @param log The log to use, or CarParkLog.NONE to discard messages.
+     */
+    public void setLog(CarParkLog log) {
+        this.log = log != null ? log : CarParkLog.NONE;
+    }
+
+    // Lets the journal and other helpers report through the same log as the car park
+    CarParkLog getLog() {
+        return log;
+    }
+
+    /**
+     * Registers a listener to be told about slots being added or deleted and cars parking or leaving.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(CarParkListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a previously added listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(CarParkListener listener) {
+        listeners.remove(listener);
     }
     
-    // Define a method to get a list of parking slots
+    // Define a method to get a list of parking slots, in the order they were added
     public List<ParkingSlot> getParkingSlots() {
-        return new ArrayList<>(parkingSlots.values());
+        List<ParkingSlot> slots = new ArrayList<>(slotStore.size());
+        for (int index = slotStore.nextSlot(0); index >= 0; index = slotStore.nextSlot(index + 1)) {
+            ParkingSlot parkingSlot = slotStore.getSlot(index);
+            if (parkingSlot != null) { // The slot may have been deleted since it was found
+                slots.add(parkingSlot);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Gets the number of parking slots in the car park.
+     *
+     * @return The number of slots.
+     */
+    public int getSlotCount() {
+        return slotStore.size();
+    }
+
+    /**
+     * Gets the number of occupied parking slots, without scanning the slots.
+     *
+     * @return The number of occupied slots.
+     */
+    public int getOccupiedCount() {
+        return slotStore.occupiedCount();
+    }
+
+    /**
+     * Gets the number of free parking slots, without scanning the slots.
+     *
+     * @return The number of free slots.
+     */
+    public int getFreeCount() {
+        return Math.max(0, slotStore.size() - slotStore.occupiedCount());
+    }
+
+    /**
+     * Saves the whole car park, slots and parked cars, to a compact binary snapshot file.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        CarParkSnapshot.write(this, file);
+    }
+
+    /**
+     * Loads the slots and parked cars saved in a snapshot file into this car park, which must be empty.
+     *
+     * @param file The file to read.
+     * @throws IOException           If the file cannot be read or is not a car park snapshot.
+     * @throws IllegalStateException If the car park already has slots.
+     */
+    public void loadSnapshot(Path file) throws IOException {
+        CarParkSnapshot.read(file, this);
+    }
+
+    /**
+     * Replaces every slot and parked car in this car park with those saved in a snapshot file.
+     * The file is checked before anything is changed; gates should be stopped meanwhile.
+     *
+     * @param file The file to read.
+     * @throws IOException           If the file cannot be read or is not a car park snapshot; nothing is changed.
+     * @throws IllegalStateException If a slot with one of the snapshot's IDs was added while it was being replaced.
+     */
+    public void replaceWithSnapshot(Path file) throws IOException {
+        CarParkSnapshot.replace(file, this);
     }
 
     /**
      * Adds a parking slot to the car park.
      *
      * @param parkingSlot The parking slot to add.
-     * @return True if the parking slot is added successfully; otherwise, false if the slot number is not unique.
+     * @return True if the parking slot is added successfully; otherwise, false if the slot number is not unique,
+     * or is missing or too long to record.
      */
     public boolean addParkingSlot(ParkingSlot parkingSlot) {
         String slotID = parkingSlot.getSlotID();
-
-        // Check if the slot number is already in use
-        if (usedSlotNumbers.contains(slotID)) {
-            return false; // Slot number is not unique
+        if (!isValidSlotID(slotID)) {
+            return false; // The journal, snapshots and history could not store it
         }
 
-        parkingSlots.put(slotID, parkingSlot);
-        usedSlotNumbers.add(slotID); // Add the slot number to the used set
+        // Hold the slot lock until listeners have heard about the slot, so no gate can
+        // park in it (and report that) before the slot's own addition has been reported
+        synchronized (parkingSlot) {
+            // Claim the slot number; putIfAbsent fails if it is already in use
+            if (parkingSlots.putIfAbsent(slotID, parkingSlot) != null) {
+                return false; // Slot number is not unique
+            }
+            slotStore.add(parkingSlot); // Give the slot its dense index
+            parkingSlot.setInService(true);
+            if (!parkingSlot.isOccupied()) {
+                offerFreeSlot(parkingSlot); // A new empty slot is available for automatic assignment
+            }
+            for (CarParkListener listener : listeners) {
+                listener.slotAdded(parkingSlot);
+            }
+        }
         return true; // Successfully added
     }
 
+    /**
+     * Adds many parking slots in one operation, as when provisioning a whole site.
+     * Slot IDs are checked for uniqueness in a single pass; a slot whose ID is already
+     * in use, repeats an earlier ID in the batch, or is missing or too long to record, is skipped. Listeners are told
+     * about the added slots once, through slotsAdded.
+     *
+     * @param newSlots The parking slots to add.
+     * @return The number of slots added.
+     */
+    public int addParkingSlots(Collection<ParkingSlot> newSlots) {
+        // Claim every slot number in one pass; putIfAbsent fails for IDs already in use
+        List<ParkingSlot> added = new ArrayList<>(newSlots.size());
+        for (ParkingSlot parkingSlot : newSlots) {
+            if (isValidSlotID(parkingSlot.getSlotID()) && parkingSlots.putIfAbsent(parkingSlot.getSlotID(), parkingSlot) == null) {
+                added.add(parkingSlot);
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+
+        // Gates can already find the claimed slots but will not use them until they are put in
+        // service, after listeners have heard about them, so every park is reported after its
+        // slot's addition without locking each slot in turn
+        slotStore.addAll(added); // Grows the store once for the whole batch
+        for (CarParkListener listener : listeners) {
+            listener.slotsAdded(added);
+        }
+        for (ParkingSlot parkingSlot : added) {
+            synchronized (parkingSlot) {
+                parkingSlot.setInService(true);
+                if (!parkingSlot.isOccupied()) {
+                    offerFreeSlot(parkingSlot);
+                }
+            }
+        }
+        return added.size();
+    }
+
     /**
      * Deletes a parking slot from the car park if it is unoccupied.
      *
      * @param slotID The ID of the parking slot to delete.
+     * @return True if the slot was deleted; otherwise, false if it is occupied or doesn't exist.
      */
-    public void deleteParkingSlot(String slotID) {
+    public boolean deleteParkingSlot(String slotID) {
         ParkingSlot slot = parkingSlots.get(slotID);
-        if (slot != null && !slot.isOccupied()) {
-            parkingSlots.remove(slotID);// Remove the parking slot
-            System.out.println("Parking slot " + slotID + " deleted.");
-            System.out.println("===============================");
+        boolean deleted = false;
+        if (slot != null) {
+            synchronized (slot) { // Stop a gate from parking in the slot while it is being removed
+                deleted = !slot.isOccupied() && isLive(slot);
+                if (deleted) {
+                    removeSlot(slot);
+                }
+            }
+        }
+        if (deleted) {
+            log.log(CarParkLog.Level.INFO, () -> "Parking slot " + slotID + " deleted.");
         } else {
-            System.out.println("Parking slot " + slotID + " cannot be deleted as it is occupied or doesn't exist.");
-            System.out.println("===============================");
+            log.log(CarParkLog.Level.WARN, () -> "Parking slot " + slotID + " cannot be deleted as it is occupied or doesn't exist.");
         }
+        return deleted;
     }
 
     /**
      * Lists all parking slots in the car park, including their status and occupied car details if applicable.
+     * The slots are read in a single pass, in the order they were added.
+     *
+     * @return A report for every slot.
      */
-    public void listAllSlots() {
-        System.out.println("List of All Slots:");
-        for (String slotID : parkingSlots.keySet()) {
-            ParkingSlot parkingSlot = parkingSlots.get(slotID);
-            String status = parkingSlot.isOccupied() ? "Occupied" : "Empty";
-            
-            System.out.print("Slot ID: " + slotID + ", Status: " + status);
-            
-            if (parkingSlot.isOccupied()) {
-                Car parkedCar = parkingSlot.getParkedCar();
-                String parkingTime = parkedCar.getParkingTime();
-
-                // Calculate the parking time duration
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                try {
-                    Date parkingStartTime = dateFormat.parse(parkingTime);
-                    Date currentTime = new Date();
-                    long durationMillis = currentTime.getTime() - parkingStartTime.getTime();
-
-                    long hours = durationMillis / (60 * 60 * 1000);
-                    long minutes = (durationMillis % (60 * 60 * 1000)) / (60 * 1000);
-                    long seconds = (durationMillis % (60 * 1000)) / 1000;
-
-                    System.out.println(", Parking Time: " + hours + " hours " + minutes + " minutes " + seconds + " seconds");
-
-                    // Display car's registration and make
-                    System.out.println("   Car Registration: " + parkedCar.getRegistrationNumber());
-                    System.out.println("   Car Make: " + parkedCar.getMake());
-                    System.out.println("===============================");
-                } catch (Exception e) {
-                    System.out.println(", Parking Time: Error calculating parking time");
-                    System.out.println("===============================");
-                }
-            } else {
-                System.out.println();
+    public List<SlotReport> listAllSlots() {
+        List<SlotReport> reports = new ArrayList<>(slotStore.size());
+        long now = System.currentTimeMillis(); // Read the clock once for the whole listing
+        for (int index = slotStore.nextSlot(0); index >= 0; index = slotStore.nextSlot(index + 1)) {
+            ParkingSlot parkingSlot = slotStore.getSlot(index);
+            if (parkingSlot == null) {
+                continue; // Deleted since it was found
             }
+            Car parkedCar = slotStore.getCar(index); // Read the car once, a gate may change the slot concurrently
+            reports.add(new SlotReport(parkingSlot.getSlotID(), parkedCar, now));
         }
+        return reports;
     }
     
+    /**
+     * Gets every slot's status as a map of slot ID to "Occupied" or "Empty".
+     * This builds a new map on every call; callers that poll should use refreshSnapshot instead.
+     *
+     * @return The status of every slot.
+     */
     public Map<String, String> getAllParkingSlotsAndStatus() {
         Map<String, String> parkingSlotsAndStatus = new HashMap<>();
-        for (String slotID : parkingSlots.keySet()) {
-            ParkingSlot parkingSlot = parkingSlots.get(slotID);
-            String status = parkingSlot.isOccupied() ? "Occupied" : "Empty";
-            parkingSlotsAndStatus.put(slotID, status);
+        for (int index = slotStore.nextSlot(0); index >= 0; index = slotStore.nextSlot(index + 1)) {
+            ParkingSlot parkingSlot = slotStore.getSlot(index);
+            if (parkingSlot != null) {
+                String status = slotStore.isOccupied(index) ? "Occupied" : "Empty";
+                parkingSlotsAndStatus.put(parkingSlot.getSlotID(), status);
+            }
         }
         return parkingSlotsAndStatus;
     }
     
+    /**
+     * Brings an occupancy snapshot up to date. When nothing has changed since the
+     * snapshot was last refreshed this returns straight away without copying or
+     * allocating anything.
+     *
+     * @param snapshot The snapshot to refresh, reused between calls.
+     * @return True if the snapshot changed; false if the car park was unchanged.
+     */
+    public boolean refreshSnapshot(OccupancySnapshot snapshot) {
+        return snapshot.refresh(slotStore);
+    }
+
+    /**
+     * Gets the car park's change counter, which increases whenever a slot is added
+     * or deleted or a car parks or leaves.
+     *
+     * @return The current version.
+     */
+    public long getVersion() {
+        return slotStore.version();
+    }
+
     /**
      * Get a parking slot by its ID.
      *
@@ -144,31 +400,361 @@ public class CarPark {
      * or the car with the same registration number is already parked.
      */
     public boolean parkCar(String slotID, Car car) {
+        long start = System.nanoTime();
+        GateEvent.Result result = parkInSlot(slotID, car, System.currentTimeMillis());
+        metrics.recordPark(result == GateEvent.Result.PARKED, System.nanoTime() - start);
+        if (result == GateEvent.Result.ALREADY_PARKED) {
+            // Car is already parked
+            log.log(CarParkLog.Level.WARN, () -> "Car with registration number '" + car.getRegistrationNumber() + "' is already parked.");
+            return false; // Car could not be parked
+        }
+        if (result == GateEvent.Result.INVALID) {
+            log.log(CarParkLog.Level.WARN, () -> "Car details are missing a registration number or too long to record.");
+            return false; // Car could not be parked
+        }
+        if (result != GateEvent.Result.PARKED) {
+            return false; // Car could not be parked
+        }
+
+        // Record the parking time
+        log.log(CarParkLog.Level.INFO, () -> "Car " + car.getRegistrationNumber() + " parked successfully in slot " + slotID + " at " + car.getParkingTime());
+        return true; // Car parked successfully
+    }
+
+    // Parks a car in a given slot without printing anything, reporting why it could not be parked
+    private GateEvent.Result parkInSlot(String slotID, Car car, long parkedAtMillis) {
+        if (!isRecordable(car)) {
+            return GateEvent.Result.INVALID;
+        }
         ParkingSlot parkingSlot = parkingSlots.get(slotID);
 
         // Check if the slot exists and is unoccupied
-        if (parkingSlot != null && !parkingSlot.isOccupied()) {
-            String registrationNumber = car.getRegistrationNumber();
-            
-            // Check if the car with this registration number is already parked
-            if (!parkedCarRegistrationNumbers.contains(registrationNumber)) {
-                parkingSlot.parkCar(car);
-                car.park(); // Call the park method to record the parking time
-
-                // Display the parking time
-                System.out.println("Car parked successfully at " + car.getParkingTime());
-                System.out.println("===============================");
-
-                parkedCarRegistrationNumbers.add(registrationNumber); // Add the registration number to the set
-                return true; // Car parked successfully
+        if (parkingSlot == null || parkingSlot.isOccupied()) {
+            return GateEvent.Result.SLOT_UNAVAILABLE;
+        }
+
+        String registrationNumber = car.getRegistrationNumber();
+
+        // Claim the registration number first so two gates cannot park the same car
+        if (slotsByRegistration.putIfAbsent(registrationNumber, parkingSlot) != null) {
+            return GateEvent.Result.ALREADY_PARKED;
+        }
+
+        synchronized (parkingSlot) {
+            // Re-check under the slot lock: another gate may have taken or deleted the slot meanwhile
+            if (parkingSlot.isOccupied() || !isLive(parkingSlot)) {
+                slotsByRegistration.remove(registrationNumber, parkingSlot); // Release the registration claim
+                return GateEvent.Result.SLOT_UNAVAILABLE;
+            }
+            occupySlot(parkingSlot, car, parkedAtMillis);
+        }
+        return GateEvent.Result.PARKED;
+    }
+
+    /**
+     * Parks a car in the next available parking slot, chosen automatically.
+     *
+     * @param car The car to park.
+     * @return The parking slot the car was parked in, or null if the car park is full
+     * or the car with the same registration number is already parked.
+     */
+    public ParkingSlot allocateAndPark(Car car) {
+        return allocateAndPark(car, null);
+    }
+
+    /**
+     * Parks a car in the next available parking slot, preferring slots in a given zone.
+     * A slot's zone is its ID without the trailing number, e.g. "L1-A" for "L1-A042";
+     * the hint matches every zone that starts with it, so "L1" prefers any slot on level 1.
+     * If no preferred slot is free, any free slot is used.
+     *
+     * @param car      The car to park.
+     * @param zoneHint The preferred zone prefix, or null for no preference.
+     * @return The parking slot the car was parked in, or null if the car park is full
+     * or the car with the same registration number is already parked.
+     */
+    public ParkingSlot allocateAndPark(Car car, String zoneHint) {
+        long start = System.nanoTime(); // Refusals are timed too, so they never add a false 0 ns sample
+        if (!isRecordable(car)) {
+            metrics.recordPark(false, System.nanoTime() - start);
+            log.log(CarParkLog.Level.WARN, () -> "Car details are missing a registration number or too long to record.");
+            return null;
+        }
+        String registrationNumber = car.getRegistrationNumber();
+        if (slotsByRegistration.containsKey(registrationNumber)) {
+            // Car is already parked
+            metrics.recordPark(false, System.nanoTime() - start);
+            log.log(CarParkLog.Level.WARN, () -> "Car with registration number '" + registrationNumber + "' is already parked.");
+            return null;
+        }
+        ParkingSlot parkingSlot = allocate(car, zoneHint, System.currentTimeMillis());
+        metrics.recordPark(parkingSlot != null, System.nanoTime() - start);
+        return parkingSlot;
+    }
+
+    // Parks a car in a free slot, preferring the hinted zone, without printing anything
+    private ParkingSlot allocate(Car car, String zoneHint, long parkedAtMillis) {
+        // Try the preferred zones first, then every zone
+        if (zoneHint != null && !zoneHint.isEmpty()) {
+            for (Map.Entry<String, Queue<ParkingSlot>> zone : freeSlotsByZone.entrySet()) {
+                if (zone.getKey().regionMatches(true, 0, zoneHint, 0, zoneHint.length())) {
+                    ParkingSlot parkingSlot = parkInFreeSlot(zone.getValue(), car, parkedAtMillis);
+                    if (parkingSlot != null) {
+                        return parkingSlot;
+                    }
+                }
+            }
+        }
+        for (Queue<ParkingSlot> freeSlots : freeSlotsByZone.values()) {
+            ParkingSlot parkingSlot = parkInFreeSlot(freeSlots, car, parkedAtMillis);
+            if (parkingSlot != null) {
+                return parkingSlot;
+            }
+        }
+        return null; // No free slot
+    }
+
+    /**
+     * Applies a batch of gate events in order and reports the outcome of each. The whole
+     * batch is validated in one pass first, and nothing is printed, so a burst of camera
+     * events costs only the slot updates themselves. Events for the same car are applied
+     * in the order given, so an exit after an entry in one batch sees the car parked.
+     * Each event's time is passed on as the parking or leaving time, so listeners see
+     * when the camera saw the car rather than when the batch was applied.
+     *
+     * @param events The events to apply, in the order the cameras saw them.
+     * @return The result of each event, at the same position as the event.
+     */
+    public GateEvent.Result[] applyBatch(List<GateEvent> events) {
+        GateEvent.Result[] results = new GateEvent.Result[events.size()];
+
+        // Validation pass: reject malformed events before touching any slot
+        for (int i = 0; i < results.length; i++) {
+            GateEvent event = events.get(i);
+            String registrationNumber = event.getRegistrationNumber();
+            if (registrationNumber == null || registrationNumber.isEmpty()
+                    || (event.getType() == GateEvent.Type.ENTRY && !isRecordable(event.getCar()))) {
+                results[i] = GateEvent.Result.INVALID;
+            }
+        }
+
+        // Apply pass, in order
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                continue; // Rejected by validation
+            }
+            long start = System.nanoTime();
+            GateEvent event = events.get(i);
+            if (event.getType() == GateEvent.Type.EXIT) {
+                results[i] = leave(event.getRegistrationNumber(), event.getTimeMillis()) != null ? GateEvent.Result.LEFT : GateEvent.Result.NOT_PARKED;
+            } else if (event.getSlotID() != null) {
+                results[i] = parkInSlot(event.getSlotID(), event.getCar(), event.getTimeMillis());
+                if (results[i] == GateEvent.Result.PARKED) {
+                    event.assignSlot(event.getSlotID());
+                }
+            } else if (slotsByRegistration.containsKey(event.getRegistrationNumber())) {
+                results[i] = GateEvent.Result.ALREADY_PARKED;
             } else {
-                // Car is already parked
-                System.out.println("Car with registration number '" + registrationNumber + "' is already parked.");
-                return false; // Car could not be parked
+                ParkingSlot parkingSlot = allocate(event.getCar(), null, event.getTimeMillis());
+                if (parkingSlot != null) {
+                    event.assignSlot(parkingSlot.getSlotID());
+                    results[i] = GateEvent.Result.PARKED;
+                } else if (slotsByRegistration.containsKey(event.getRegistrationNumber())) {
+                    results[i] = GateEvent.Result.ALREADY_PARKED; // Parked by another gate meanwhile
+                } else {
+                    results[i] = GateEvent.Result.FULL;
+                }
+            }
+            if (event.getType() == GateEvent.Type.EXIT) {
+                metrics.recordDeparture(results[i] == GateEvent.Result.LEFT, System.nanoTime() - start);
+            } else {
+                metrics.recordPark(results[i] == GateEvent.Result.PARKED, System.nanoTime() - start);
             }
         }
+        return results;
+    }
 
-        return false; // Car could not be parked
+    /**
+     * Works out the zone a slot belongs to: its ID without the trailing digits.
+     *
+     * @param slotID The slot ID, e.g. "L1-A042".
+     * @return The zone, e.g. "L1-A".
+     */
+    public static String zoneOf(String slotID) {
+        int end = slotID.length();
+        while (end > 0 && Character.isDigit(slotID.charAt(end - 1))) {
+            end--;
+        }
+        return slotID.substring(0, end);
+    }
+
+    // Takes slots off a free queue until one can be claimed; stale entries for slots that were
+    // parked in by ID or deleted since they were queued are simply dropped
+    private ParkingSlot parkInFreeSlot(Queue<ParkingSlot> freeSlots, Car car, long parkedAtMillis) {
+        ParkingSlot parkingSlot;
+        while ((parkingSlot = freeSlots.poll()) != null) {
+            synchronized (parkingSlot) {
+                parkingSlot.setQueuedAsFree(false);
+                if (parkingSlot.isOccupied() || !isLive(parkingSlot)) {
+                    continue; // Stale entry
+                }
+                if (slotsByRegistration.putIfAbsent(car.getRegistrationNumber(), parkingSlot) != null) {
+                    offerFreeSlot(parkingSlot); // The car was parked elsewhere meanwhile; give the slot back
+                    return null;
+                }
+                occupySlot(parkingSlot, car, parkedAtMillis);
+                return parkingSlot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parks a car with a recorded parking time, used when restoring a saved car park.
+     * Unlike parkCar this never refuses: a car already in the slot, or the same car in
+     * another slot, is moved out first, so replaying recorded changes always converges.
+     *
+     * @param slotID         The ID of the parking slot.
+     * @param car            The car to park.
+     * @param parkedAtMillis The recorded parking time in epoch milliseconds.
+     */
+    void restoreCar(String slotID, Car car, long parkedAtMillis) {
+        ParkingSlot parkingSlot = parkingSlots.get(slotID);
+        if (parkingSlot == null) {
+            return;
+        }
+        ParkingSlot previousSlot = slotsByRegistration.get(car.getRegistrationNumber());
+        if (previousSlot != null && previousSlot != parkingSlot) {
+            restoreLeave(previousSlot.getSlotID()); // The car has moved since it was recorded there
+        }
+        synchronized (parkingSlot) {
+            if (!isLive(parkingSlot)) {
+                return; // Deleted meanwhile
+            }
+            Car currentCar = parkingSlot.getParkedCar();
+            if (currentCar != null) {
+                vacateSlot(parkingSlot, currentCar, System.currentTimeMillis());
+            }
+            slotsByRegistration.put(car.getRegistrationNumber(), parkingSlot);
+            occupySlot(parkingSlot, car, parkedAtMillis);
+        }
+    }
+
+    /**
+     * Empties a parking slot, used when restoring a saved car park.
+     *
+     * @param slotID The ID of the parking slot.
+     */
+    void restoreLeave(String slotID) {
+        ParkingSlot parkingSlot = parkingSlots.get(slotID);
+        if (parkingSlot != null) {
+            synchronized (parkingSlot) {
+                Car car = parkingSlot.getParkedCar();
+                if (car != null) {
+                    vacateSlot(parkingSlot, car, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes a parking slot, emptying it first if needed, used when restoring a saved car park.
+     *
+     * @param slotID The ID of the parking slot.
+     */
+    void restoreSlotRemoved(String slotID) {
+        restoreLeave(slotID);
+        ParkingSlot parkingSlot = parkingSlots.get(slotID);
+        if (parkingSlot != null) {
+            synchronized (parkingSlot) {
+                if (!parkingSlot.isOccupied() && isLive(parkingSlot)) {
+                    removeSlot(parkingSlot);
+                }
+            }
+        }
+    }
+
+    // Whether a car has a registration number and details short enough to journal; over-long details are refused, never cut
+    private static boolean isRecordable(Car car) {
+        if (car == null) {
+            return false;
+        }
+        String registrationNumber = car.getRegistrationNumber();
+        return registrationNumber != null && !registrationNumber.isEmpty()
+                && fits(registrationNumber) && fits(car.getMake()) && fits(car.getModel()) && fits(car.getYear());
+    }
+
+    // Whether a slot ID is present and short enough for the journal, snapshots and history to store
+    static boolean isValidSlotID(String slotID) {
+        return slotID != null && !slotID.isEmpty() && fits(slotID);
+    }
+
+    // Whether a possibly missing detail fits in MAX_FIELD_BYTES; only long strings are actually encoded to check
+    static boolean fits(String value) {
+        return value == null || value.length() * 3 <= MAX_FIELD_BYTES
+                || (value.length() <= MAX_FIELD_BYTES && value.getBytes(StandardCharsets.UTF_8).length <= MAX_FIELD_BYTES);
+    }
+
+    // Whether a slot is still in this car park and open to gates; called with the slot locked
+    private boolean isLive(ParkingSlot parkingSlot) {
+        return parkingSlot.isInService() && parkingSlots.get(parkingSlot.getSlotID()) == parkingSlot;
+    }
+
+    // Takes an empty, live slot out of service and out of the car park; called with the slot locked.
+    // The slot ID is released last, after listeners have heard about the removal, so a slot added
+    // again under the same ID can never be reported (or journaled) before this one's removal
+    private void removeSlot(ParkingSlot parkingSlot) {
+        parkingSlot.setInService(false); // Gates refuse the slot from here on
+        withdrawFreeSlot(parkingSlot);
+        slotStore.remove(parkingSlot); // Free its index for reuse
+        for (CarParkListener listener : listeners) {
+            listener.slotRemoved(parkingSlot);
+        }
+        parkingSlots.remove(parkingSlot.getSlotID(), parkingSlot); // Release the slot ID
+    }
+
+    // Puts a free slot on its zone's queue unless it is already there; called with the slot locked
+    private void offerFreeSlot(ParkingSlot parkingSlot) {
+        if (!parkingSlot.isQueuedAsFree()) {
+            parkingSlot.setQueuedAsFree(true);
+            freeSlotsByZone.computeIfAbsent(zoneOf(parkingSlot.getSlotID()), zone -> new ConcurrentLinkedQueue<>())
+                    .offer(parkingSlot);
+        }
+    }
+
+    // Takes a deleted slot off its zone's queue, so deleting and re-adding slots cannot grow the queue
+    // with entries no gate will ever reach; called with the slot locked
+    private void withdrawFreeSlot(ParkingSlot parkingSlot) {
+        if (parkingSlot.isQueuedAsFree()) {
+            parkingSlot.setQueuedAsFree(false);
+            Queue<ParkingSlot> freeSlots = freeSlotsByZone.get(zoneOf(parkingSlot.getSlotID()));
+            if (freeSlots != null) {
+                freeSlots.remove(parkingSlot);
+            }
+        }
+    }
+
+    // Parks a car whose registration number has been claimed; called with the slot locked
+    private void occupySlot(ParkingSlot parkingSlot, Car car, long parkedAtMillis) {
+        parkingSlot.parkCar(car);
+        car.park(parkedAtMillis); // Call the park method to record the parking time
+        slotStore.setCar(parkingSlot.getIndex(), car);
+        indexCar(parkingSlot, car);
+        for (CarParkListener listener : listeners) {
+            listener.carParked(parkingSlot, car);
+        }
+    }
+
+    // Takes a car out of its slot and every index, reporting when it left; called with the slot locked
+    private void vacateSlot(ParkingSlot parkingSlot, Car car, long leftAtMillis) {
+        parkingSlot.removeCar();
+        slotStore.clearCar(parkingSlot.getIndex());
+        slotsByRegistration.remove(car.getRegistrationNumber(), parkingSlot); // Take the car out of the registration index
+        unindexCar(parkingSlot, car);
+        offerFreeSlot(parkingSlot); // The slot can be assigned automatically again
+        for (CarParkListener listener : listeners) {
+            listener.carLeft(parkingSlot, car, leftAtMillis);
+        }
     }
 
 
@@ -179,96 +765,199 @@ public class CarPark {
      * @return A Map.Entry containing the Car and ParkingSlot where the car is parked if found; otherwise, null.
      */
     public Map.Entry<Car, ParkingSlot> findCarByRegistration(String registrationNumber) {
-        for (Map.Entry<String, ParkingSlot> entry : parkingSlots.entrySet()) {
-            ParkingSlot slot = entry.getValue();
-            if (slot.isOccupied() && slot.getParkedCar().getRegistrationNumber().equals(registrationNumber)) {
-                return new AbstractMap.SimpleEntry<>(slot.getParkedCar(), slot);
+        long start = System.nanoTime();
+        Map.Entry<Car, ParkingSlot> found = null;
+        ParkingSlot slot = slotsByRegistration.get(registrationNumber); // Look the slot up in the registration index
+        if (slot != null) {
+            Car car = slot.getParkedCar();
+            // The registration may only be claimed while its park is in progress, so check the car itself
+            if (car != null && car.getRegistrationNumber().equals(registrationNumber)) {
+                found = new AbstractMap.SimpleEntry<>(car, slot);
             }
         }
-        return null;
+        metrics.recordLookup(System.nanoTime() - start);
+        return found;
     }
 
     /**
      * Removes a car from a parking slot by its registration number, if found and the slot is unoccupied.
-     * Prints relevant messages indicating success or failure.
+     * Sends a message about the outcome to the car park's log.
      *
      * @param registrationNumber The registration number of the car to remove.
+     * @return True if the car was removed; otherwise, false if it is not parked.
      */
-    public void removeCarByRegistration(String registrationNumber) {
-            for (ParkingSlot slot : parkingSlots.values()) {
-                if (slot.isOccupied() && slot.getParkedCar().getRegistrationNumber().equals(registrationNumber)) {
-                    slot.removeCar();
-                    System.out.println("Car with registration " + registrationNumber + " removed from slot " + slot.getSlotID());
-                    System.out.println("===============================");
-                    return;
+    public boolean removeCarByRegistration(String registrationNumber) {
+        long start = System.nanoTime();
+        ParkingSlot slot = leave(registrationNumber, System.currentTimeMillis());
+        metrics.recordDeparture(slot != null, System.nanoTime() - start);
+        if (slot != null) {
+            log.log(CarParkLog.Level.INFO, () -> "Car with registration " + registrationNumber + " removed from slot " + slot.getSlotID());
+            return true;
+        }
+        log.log(CarParkLog.Level.WARN, () -> "Car with registration " + registrationNumber + " not found in any slot.");
+        return false;
+    }
+
+    // Takes a car out of its slot without printing anything; returns the slot it left, or null if it was not parked
+    private ParkingSlot leave(String registrationNumber, long leftAtMillis) {
+        ParkingSlot slot = slotsByRegistration.get(registrationNumber); // Look the slot up in the registration index
+        if (slot != null) {
+            synchronized (slot) {
+                Car car = slot.getParkedCar();
+                if (car != null && car.getRegistrationNumber().equals(registrationNumber)) {
+                    vacateSlot(slot, car, leftAtMillis);
+                    return slot;
                 }
             }
-            System.out.println("Car with registration " + registrationNumber + " not found in any slot.");
-            System.out.println("===============================");
         }
+        return null;
+    }
         
     /**
      * Removes a car from a parking slot by Slot ID, if found and the slot is unoccupied.
-     * Prints relevant messages indicating success or failure.
+     * Sends a message about the outcome to the car park's log.
      *
      * @param SlotID .
+     * @return True if a car was removed; otherwise, false if the slot is empty or doesn't exist.
      */    
-    public void removeCarBySlotID(String slotID) {
-    if (parkingSlots.containsKey(slotID)) {
+    public boolean removeCarBySlotID(String slotID) {
+        long start = System.nanoTime();
         ParkingSlot slot = parkingSlots.get(slotID);
-        if (slot.isOccupied()) {
-            slot.removeCar();
-        } else {
-            System.out.println("Slot " + slotID + " is not occupied.");
+        if (slot != null) {
+            Car car;
+            synchronized (slot) {
+                car = slot.getParkedCar();
+                if (car != null) {
+                    vacateSlot(slot, car, System.currentTimeMillis());
+                }
+            }
+            metrics.recordDeparture(car != null, System.nanoTime() - start);
+            if (car == null) {
+                log.log(CarParkLog.Level.WARN, () -> "Slot " + slotID + " is not occupied.");
+            } else {
+                log.log(CarParkLog.Level.INFO, () -> "Car with registration " + car.getRegistrationNumber() + " removed from slot " + slotID);
+            }
+            return car != null;
         }
-    } else {
-        System.out.println("Slot " + slotID + " does not exist.");
-    }
+        metrics.recordDeparture(false, System.nanoTime() - start);
+        log.log(CarParkLog.Level.WARN, () -> "Slot " + slotID + " does not exist.");
+        return false;
     }
         
     
 
-        /**
-     * Finds and displays information about cars with a specified make that are currently parked in the car park.
-     * This includes details like the slot ID, registration number, make, model, year, and occupied time.
-     * If the calculation of occupied time encounters an error, an error message is displayed.
+    /**
+     * Finds the parking slots holding cars of a given make, ignoring case.
+     *
+     * @param make The make to look for.
+     * @return The slots holding a car of that make.
+     */
+    public List<ParkingSlot> findSlotsByMake(String make) {
+        return slotsByMake.find(make);
+    }
+
+    /**
+     * Finds the parking slots holding cars of a given model, ignoring case.
+     *
+     * @param model The model to look for.
+     * @return The slots holding a car of that model.
+     */
+    public List<ParkingSlot> findSlotsByModel(String model) {
+        return slotsByModel.find(model);
+    }
+
+    /**
+     * Finds the parking slots holding cars of a given manufacturing year.
+     *
+     * @param year The year to look for.
+     * @return The slots holding a car of that year.
+     */
+    public List<ParkingSlot> findSlotsByYear(String year) {
+        return slotsByYear.find(year);
+    }
+
+    /**
+     * Finds the cars with a specified make that are currently parked in the car park, ignoring case.
+     * Each report holds the slot ID, registration number, make, model, year and occupied time.
      *
      * @param make The make of the cars to find.
+     * @return A report for every slot holding a car of that make.
      */
-    public void findCarsByMake(String make) {
-        System.out.println("Cars with Make: " + make);
-        for (String slotID : parkingSlots.keySet()) {
-            ParkingSlot parkingSlot = parkingSlots.get(slotID);
-            if (parkingSlot.isOccupied()) {
-                Car parkedCar = parkingSlot.getParkedCar();
-                if (parkedCar.getMake().equalsIgnoreCase(make)) {
-                    String registrationNumber = parkedCar.getRegistrationNumber();
-                    
-                    // Calculate the parking time duration
-                    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                    try {
-                        Date parkingStartTime = dateFormat.parse(parkedCar.getParkingTime());
-                        Date currentTime = new Date();
-                        long durationMillis = currentTime.getTime() - parkingStartTime.getTime();
-
-                        long hours = durationMillis / (60 * 60 * 1000);
-                        long minutes = (durationMillis % (60 * 60 * 1000)) / (60 * 1000);
-                        long seconds = (durationMillis % (60 * 1000)) / 1000;
-
-                        System.out.println("Slot ID: " + slotID);
-                        System.out.println("   Registration Number: " + registrationNumber);
-                        System.out.println("   Make: " + parkedCar.getMake());
-                        System.out.println("   Model: " + parkedCar.getModel());
-                        System.out.println("   Year: " + parkedCar.getYear());
-                        System.out.println("   Occupied Time: " + hours + " hours " + minutes + " minutes " + seconds + " seconds");
-                        System.out.println("===============================");
-                    } catch (Exception e) {
-                        System.out.println("Slot ID: " + slotID + ", Registration Number: " + registrationNumber +
-                                ", Occupied Time: Error calculating parking time");
-                        System.out.println("===============================");
-                    }
-                }
+    public List<SlotReport> findCarsByMake(String make) {
+        List<ParkingSlot> parkingSlots = slotsByMake.find(make);
+        List<SlotReport> reports = new ArrayList<>(parkingSlots.size());
+        long now = System.currentTimeMillis(); // Read the clock once for the whole search
+        for (ParkingSlot parkingSlot : parkingSlots) {
+            Car parkedCar = parkingSlot.getParkedCar(); // Read the car once, a gate may change the slot concurrently
+            if (parkedCar != null && parkedCar.getMake().equalsIgnoreCase(make)) {
+                reports.add(new SlotReport(parkingSlot.getSlotID(), parkedCar, now));
             }
         }
+        return reports;
+    }
+
+    /**
+     * Bills every parked car as if it left now, for an end-of-day settlement. Entry times are
+     * gathered in one pass over the occupied slots into plain arrays and priced together by
+     * the tariff, rather than car by car. Cars that park or leave during the pass may or may
+     * not be included.
+     *
+     * @param tariff   The tariff to charge.
+     * @param atMillis The time to bill to, in epoch milliseconds.
+     * @return The fee for every parked car, and their total.
+     */
+    public BillingRun billOccupiedSlots(Tariff tariff, long atMillis) {
+        int capacity = Math.max(16, slotStore.occupiedCount());
+        String[] slotIDs = new String[capacity];
+        String[] registrationNumbers = new String[capacity];
+        long[] entryMillis = new long[capacity];
+        int count = 0;
+        for (int index = slotStore.nextOccupied(0); index >= 0; index = slotStore.nextOccupied(index + 1)) {
+            ParkingSlot parkingSlot = slotStore.getSlot(index);
+            Car parkedCar = slotStore.getCar(index); // Read the car once, a gate may change the slot concurrently
+            if (parkingSlot == null || parkedCar == null) {
+                continue; // Left or deleted since it was found
+            }
+            if (count == capacity) { // More cars parked during the pass
+                capacity *= 2;
+                slotIDs = Arrays.copyOf(slotIDs, capacity);
+                registrationNumbers = Arrays.copyOf(registrationNumbers, capacity);
+                entryMillis = Arrays.copyOf(entryMillis, capacity);
+            }
+            slotIDs[count] = parkingSlot.getSlotID();
+            registrationNumbers[count] = parkedCar.getRegistrationNumber();
+            entryMillis[count] = parkedCar.getParkedAtMillis();
+            count++;
+        }
+        long[] feesCents = new long[count];
+        long totalCents = tariff.bill(entryMillis, count, atMillis, feesCents);
+        return new BillingRun(atMillis, count, slotIDs, registrationNumbers, entryMillis, feesCents, totalCents);
+    }
+
+    // Adds a newly parked car to the make, model and year indexes; called with the slot locked
+    private void indexCar(ParkingSlot parkingSlot, Car car) {
+        slotsByMake.add(car.getMake(), parkingSlot);
+        slotsByModel.add(car.getModel(), parkingSlot);
+        slotsByYear.add(car.getYear(), parkingSlot);
+    }
+
+    // Removes a departing car from the make, model and year indexes; called with the slot locked
+    private void unindexCar(ParkingSlot parkingSlot, Car car) {
+        slotsByMake.remove(car.getMake(), parkingSlot);
+        slotsByModel.remove(car.getModel(), parkingSlot);
+        slotsByYear.remove(car.getYear(), parkingSlot);
+    }
+
+    /**
+     * Formats a duration as "H hours M minutes S seconds" for display.
+     *
+     * @param durationMillis The duration in milliseconds.
+     * @return The formatted duration.
+     */
+    static String formatDuration(long durationMillis) {
+        long hours = durationMillis / (60 * 60 * 1000);
+        long minutes = (durationMillis % (60 * 60 * 1000)) / (60 * 1000);
+        long seconds = (durationMillis % (60 * 1000)) / 1000;
+        return hours + " hours " + minutes + " minutes " + seconds + " seconds";
     }
-}
\ No newline at end of file
+}
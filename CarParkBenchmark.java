@@ -0,0 +1,280 @@
+/**
+* This class measures the speed of the main CarPark operations at different car
+* park sizes, with one gate thread and with several. Run it from the command line:
+*   javac *.java
+*   java -Xmx4g CarParkBenchmark [sizes=100,10000,1000000] [threads=1,4] [seconds=2] [churn=5000000]
+* Each operation is warmed up before it is measured, and results are printed as
+* throughput and average time per call. With churn=N, N park/unpark cycles with
+* ever-new registration numbers (and a slot deleted and re-added every cycle) are
+* run against the first size instead, printing heap use and lookup time as they go,
+* which should both stay flat.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.ToIntFunction;
+
+public class CarParkBenchmark {
+    private static final String[] MAKES = { "Toyota", "Mazda", "Ford", "Holden", "Honda", "Hyundai", "Kia", "Tesla" };
+    private static final int PARK_CYCLE = 1000; // Slots a thread parks in, then empties, per cycle
+
+    private static volatile long sink; // Results are folded in here so the JIT cannot drop the calls
+
+    // One benchmarked operation, run by a thread until the deadline; returns {calls, nanoseconds timed}
+    private interface Worker {
+        long[] run(int thread, long deadline);
+    }
+
+    private final int size;
+    private final int threads;
+    private final long measureNanos;
+    private final long warmupNanos;
+    private CarPark carPark;
+    private int residentCars; // Cars parked in slots [0, residentCars) for the whole run
+
+    private CarParkBenchmark(int size, int threads, double seconds) {
+        this.size = size;
+        this.threads = threads;
+        this.measureNanos = (long) (seconds * 1e9);
+        this.warmupNanos = measureNanos / 2;
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args Optional settings: sizes=..., threads=... (comma-separated lists) and seconds=... per measurement.
+     * @throws InterruptedException If interrupted while waiting for the benchmark threads.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int[] sizes = { 100, 10_000, 1_000_000 };
+        int[] threadCounts = { 1, Math.max(2, Runtime.getRuntime().availableProcessors()) };
+        double seconds = 2;
+        long churnCycles = 0;
+        for (String arg : args) {
+            if (arg.startsWith("sizes=")) {
+                sizes = parseList(arg.substring(6));
+            } else if (arg.startsWith("threads=")) {
+                threadCounts = parseList(arg.substring(8));
+            } else if (arg.startsWith("seconds=")) {
+                seconds = Double.parseDouble(arg.substring(8));
+            } else if (arg.startsWith("churn=")) {
+                churnCycles = Long.parseLong(arg.substring(6));
+            }
+        }
+
+        if (churnCycles > 0) {
+            CarParkBenchmark benchmark = new CarParkBenchmark(sizes[0], 1, seconds);
+            benchmark.setUp();
+            benchmark.runChurn(churnCycles);
+            return;
+        }
+
+        System.out.printf("%-30s %10s %8s %16s %14s%n", "Operation", "Slots", "Threads", "Ops/s", "ns/op");
+        for (int size : sizes) {
+            for (int threadCount : threadCounts) {
+                CarParkBenchmark benchmark = new CarParkBenchmark(size, threadCount, seconds);
+                benchmark.setUp();
+                benchmark.runAll();
+            }
+        }
+    }
+
+    // Fills a car park: half the slots hold resident cars, the rest are shared out between the threads
+    private void setUp() {
+        carPark = new CarPark();
+        List<ParkingSlot> slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ParkingSlot(slotID(i)));
+        }
+        carPark.addParkingSlots(slots);
+        residentCars = size / 2;
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < residentCars; i++) {
+            carPark.parkCar(slotID(i), new Car(plate(i), MAKES[random.nextInt(MAKES.length)], "Model", "2020"));
+        }
+    }
+
+    private void runAll() throws InterruptedException {
+        report("parkCar", measure((thread, deadline) -> parkAndRemove(thread, deadline, true)));
+        report("removeCarByRegistration", measure((thread, deadline) -> parkAndRemove(thread, deadline, false)));
+        report("findCarByRegistration", measure((thread, deadline) -> {
+            SplittableRandom random = new SplittableRandom(thread);
+            long calls = 0;
+            long start = System.nanoTime();
+            while ((calls & 255) != 0 || System.nanoTime() < deadline) {
+                Map.Entry<Car, ParkingSlot> entry = carPark.findCarByRegistration(plate(random.nextInt(Math.max(1, residentCars))));
+                sink += entry != null ? 1 : 0;
+                calls++;
+            }
+            return new long[] { calls, System.nanoTime() - start };
+        }));
+        report("findCarsByMake", measure((thread, deadline) -> repeat(deadline, random ->
+                carPark.findCarsByMake(MAKES[random.nextInt(MAKES.length)]).size())));
+        report("getAllParkingSlotsAndStatus", measure((thread, deadline) -> repeat(deadline, random ->
+                carPark.getAllParkingSlotsAndStatus().size())));
+        report("listAllSlots", measure((thread, deadline) -> repeat(deadline, random ->
+                carPark.listAllSlots().size())));
+        Tariff tariff = Tariff.standard();
+        report("billOccupiedSlots", measure((thread, deadline) -> repeat(deadline, random ->
+                carPark.billOccupiedSlots(tariff, System.currentTimeMillis()).getCount())));
+    }
+
+    // Parks and unparks cars that are never seen again, and deletes and re-adds a free slot, for
+    // many cycles; anything kept per car or per slot ID that is not released shows up as growth
+    private void runChurn(long cycles) {
+        int freeSlots = size - residentCars;
+        if (freeSlots < 2) {
+            System.out.println("churn needs a size of at least 4");
+            return;
+        }
+        int reportEvery = (int) Math.max(1, cycles / 10);
+        SplittableRandom random = new SplittableRandom(7);
+        System.out.printf("%-14s %12s %14s%n", "Cycles", "Heap MB", "Lookup ns");
+        for (long cycle = 1; cycle <= cycles; cycle++) {
+            // Park a brand-new car in a random free slot and send it away again
+            int slot = residentCars + random.nextInt(freeSlots - 1);
+            String newPlate = "C" + cycle;
+            carPark.parkCar(slotID(slot), new Car(newPlate, MAKES[(int) (cycle % MAKES.length)], "Model" + cycle, "2020"));
+            carPark.removeCarByRegistration(newPlate);
+            // The last slot is deleted and added again, so its ID must be released each time
+            String churnedSlot = slotID(size - 1);
+            carPark.deleteParkingSlot(churnedSlot);
+            carPark.addParkingSlot(new ParkingSlot(churnedSlot));
+
+            if (cycle % reportEvery == 0) {
+                System.out.printf("%,-14d %12.1f %,14.1f%n", cycle, usedHeapMegabytes(), lookupNanos(random));
+            }
+        }
+        System.out.printf("%d slots, %d cars parked at the end%n", carPark.getSlotCount(), carPark.getOccupiedCount());
+    }
+
+    // Average time of a resident car lookup over a short sample
+    private double lookupNanos(SplittableRandom random) {
+        int lookups = 100_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            Map.Entry<Car, ParkingSlot> entry = carPark.findCarByRegistration(plate(random.nextInt(Math.max(1, residentCars))));
+            sink += entry != null ? 1 : 0;
+        }
+        return (double) (System.nanoTime() - start) / lookups;
+    }
+
+    private static double usedHeapMegabytes() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc(); // Only live objects should count
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024.0 * 1024.0);
+    }
+
+    // Runs a call until the deadline, checking the clock every call since these calls are slow at large sizes
+    private static long[] repeat(long deadline, ToIntFunction<SplittableRandom> call) {
+        SplittableRandom random = new SplittableRandom();
+        long calls = 0;
+        long start = System.nanoTime();
+        do {
+            sink += call.applyAsInt(random);
+            calls++;
+        } while (System.nanoTime() < deadline);
+        return new long[] { calls, System.nanoTime() - start };
+    }
+
+    // Parks cars into this thread's share of the free slots and then removes them again, timing
+    // only the parks or only the removals, so each operation always has slots or cars to work on
+    private long[] parkAndRemove(int thread, long deadline, boolean timeParks) {
+        int freeSlots = size - residentCars;
+        int share = freeSlots / threads;
+        int first = residentCars + thread * share;
+        int cycle = Math.max(1, Math.min(PARK_CYCLE, share));
+        if (share == 0) {
+            return new long[] { 0, 0 };
+        }
+        long calls = 0;
+        long timed = 0;
+        int offset = 0;
+        while (System.nanoTime() < deadline) {
+            int from = first + offset;
+            int to = Math.min(first + share, from + cycle);
+            long start = System.nanoTime();
+            for (int i = from; i < to; i++) {
+                sink += carPark.parkCar(slotID(i), new Car(plate(i), "Mazda", "Model", "2020")) ? 1 : 0;
+            }
+            long parked = System.nanoTime();
+            for (int i = from; i < to; i++) {
+                carPark.removeCarByRegistration(plate(i));
+            }
+            long removed = System.nanoTime();
+            timed += timeParks ? parked - start : removed - parked;
+            calls += to - from;
+            offset = to - first >= share ? 0 : to - first;
+        }
+        return new long[] { calls, timed };
+    }
+
+    // Warms an operation up, then measures it on every thread at once
+    private long[] measure(Worker worker) throws InterruptedException {
+        runThreads(worker, warmupNanos);
+        return runThreads(worker, measureNanos);
+    }
+
+    private long[] runThreads(Worker worker, long durationNanos) throws InterruptedException {
+        long[][] results = new long[threads][];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> running = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread gate = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                results[thread] = worker.run(thread, System.nanoTime() + durationNanos);
+            }, "benchmark-gate-" + t);
+            gate.start();
+            running.add(gate);
+        }
+        start.countDown(); // Start every thread together
+        for (Thread gate : running) {
+            gate.join();
+        }
+        // Sum the calls, and the throughput of each thread over its own timed nanoseconds
+        long calls = 0;
+        long nanos = 0;
+        double opsPerSecond = 0;
+        for (long[] result : results) {
+            calls += result[0];
+            nanos += result[1];
+            if (result[1] > 0) {
+                opsPerSecond += result[0] * 1e9 / result[1];
+            }
+        }
+        return new long[] { calls, nanos, (long) opsPerSecond };
+    }
+
+    private void report(String operation, long[] result) {
+        double nanosPerCall = result[0] > 0 ? (double) result[1] / result[0] : 0;
+        System.out.printf("%-30s %10d %8d %,16d %,14.1f%n", operation, size, threads, result[2], nanosPerCall);
+    }
+
+    private static String slotID(int i) {
+        return "S" + i;
+    }
+
+    private static String plate(int i) {
+        return "P" + i;
+    }
+
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
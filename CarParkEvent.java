@@ -0,0 +1,139 @@
+/**
+* This class represents one change to a CarPark, as delivered to subscribers of
+* its event stream: a slot added or removed, or a car parked or leaving. Events
+* are numbered as they are published, and the events for one slot always arrive
+* in order; events from different gates may arrive a little out of number order.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+public final class CarParkEvent {
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        SLOT_ADDED, // A parking slot was added
+        SLOT_REMOVED, // A parking slot was deleted
+        CAR_PARKED, // A car was parked in a slot
+        CAR_LEFT // A car left its slot
+    }
+
+    private final Type type;
+    private final long sequence; // Position in the stream, counting from 1
+    private final String slotID;
+    private final Car car; // The car that parked or left, or null for slot changes
+    private final long timeMillis; // When the change happened, epoch milliseconds
+
+    private CarParkEvent(Type type, long sequence, String slotID, Car car, long timeMillis) {
+        this.type = type;
+        this.sequence = sequence;
+        this.slotID = slotID;
+        this.car = car;
+        this.timeMillis = timeMillis;
+    }
+
+    /**
+     * Creates an event for a slot that was added.
+     *
+     * @param sequence   The event's position in the stream.
+     * @param slotID     The slot ID.
+     * @param timeMillis When the slot was added, in epoch milliseconds.
+     * @return The event.
+     */
+    public static CarParkEvent slotAdded(long sequence, String slotID, long timeMillis) {
+        return new CarParkEvent(Type.SLOT_ADDED, sequence, slotID, null, timeMillis);
+    }
+
+    /**
+     * Creates an event for a slot that was deleted.
+     *
+     * @param sequence   The event's position in the stream.
+     * @param slotID     The slot ID.
+     * @param timeMillis When the slot was deleted, in epoch milliseconds.
+     * @return The event.
+     */
+    public static CarParkEvent slotRemoved(long sequence, String slotID, long timeMillis) {
+        return new CarParkEvent(Type.SLOT_REMOVED, sequence, slotID, null, timeMillis);
+    }
+
+    /**
+     * Creates an event for a car that parked.
+     *
+     * @param sequence   The event's position in the stream.
+     * @param slotID     The slot the car parked in.
+     * @param car        The car.
+     * @param timeMillis When the car parked, in epoch milliseconds.
+     * @return The event.
+     */
+    public static CarParkEvent carParked(long sequence, String slotID, Car car, long timeMillis) {
+        return new CarParkEvent(Type.CAR_PARKED, sequence, slotID, car, timeMillis);
+    }
+
+    /**
+     * Creates an event for a car that left.
+     *
+     * @param sequence   The event's position in the stream.
+     * @param slotID     The slot the car left.
+     * @param car        The car.
+     * @param timeMillis When the car left, in epoch milliseconds.
+     * @return The event.
+     */
+    public static CarParkEvent carLeft(long sequence, String slotID, Car car, long timeMillis) {
+        return new CarParkEvent(Type.CAR_LEFT, sequence, slotID, car, timeMillis);
+    }
+
+    /**
+     * Gets the kind of change.
+     *
+     * @return The event type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the event's position in the stream. Every event has its own number, and a
+     * slot's events arrive in increasing order; CarParkEventPublisher.getDroppedCount
+     * tells a subscriber how many events it has missed.
+     *
+     * @return The sequence number, counting from 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the slot that changed.
+     *
+     * @return The slot ID.
+     */
+    public String getSlotID() {
+        return slotID;
+    }
+
+    /**
+     * Gets the car that parked or left.
+     *
+     * @return The car, or null for a slot added or removed.
+     */
+    public Car getCar() {
+        return car;
+    }
+
+    /**
+     * Gets when the change happened.
+     *
+     * @return The time in epoch milliseconds.
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CarParkEvent{#" + sequence + " " + type + ", slot=" + slotID
+                + (car != null ? ", registration=" + car.getRegistrationNumber() : "") + ", time=" + timeMillis + '}';
+    }
+}
@@ -0,0 +1,303 @@
+/**
+* This class turns a CarPark's listener calls into a typed event stream that any
+* number of subscribers can follow, as a java.util.concurrent.Flow.Publisher.
+* Each subscriber has its own bounded, lock-free buffer and is fed on a background
+* thread; a gate only ever adds the event to each buffer and moves on, and gates
+* never wait on each other to publish. If a subscriber falls so far behind that
+* its buffer is full, the event is dropped for that subscriber alone and counted
+* against it, so a slow sign or dashboard can never hold up a gate. Every event
+* gets a unique number, and events for one slot arrive in order; events from
+* different gates may arrive a little out of number order, so a subscriber learns
+* about missed events from getDroppedCount(subscriber) rather than from gaps.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CarParkEventPublisher implements CarParkListener, Flow.Publisher<CarParkEvent>, AutoCloseable {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(); // Numbers the delivery threads
+
+    private final CarPark carPark;
+    private final ExecutorService executor; // Runs each subscriber's deliveries, one subscriber at a time per task
+    private final int bufferCapacity; // Most events buffered for one subscriber
+    private final List<Feed> feeds; // One per current subscriber
+    private final AtomicLong sequence; // Number of the last event published
+    private final LongAdder dropped; // Events dropped for subscribers whose buffer was full
+    private volatile boolean closed;
+
+    /**
+     * Creates a publisher for a car park's changes and starts listening to it. Most callers
+     * should use CarPark.subscribe, which shares one publisher per car park.
+     *
+     * @param carPark        The car park to publish.
+     * @param bufferCapacity The most events buffered for each subscriber before events are dropped for it.
+     * @return The publisher, already listening.
+     */
+    public static CarParkEventPublisher create(CarPark carPark, int bufferCapacity) {
+        CarParkEventPublisher publisher = new CarParkEventPublisher(carPark, bufferCapacity);
+        carPark.addListener(publisher); // Only once the publisher is fully built
+        return publisher;
+    }
+
+    private CarParkEventPublisher(CarPark carPark, int bufferCapacity) {
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException("Buffer capacity must be at least 1");
+        }
+        this.carPark = carPark;
+        // Idle delivery threads end on their own after a minute, so the pool never needs shutting down
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "carpark-events-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bufferCapacity = bufferCapacity;
+        this.feeds = new CopyOnWriteArrayList<>();
+        this.sequence = new AtomicLong();
+        this.dropped = new LongAdder();
+    }
+
+    /**
+     * Subscribes to every change published from now on. The subscriber is called on a
+     * background thread and should request events as it is ready for them. Subscribing
+     * to a closed publisher completes the subscriber straight away.
+     *
+     * @param subscriber The subscriber.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super CarParkEvent> subscriber) {
+        Feed feed = new Feed(Objects.requireNonNull(subscriber));
+        feeds.add(feed);
+        if (closed) {
+            feed.complete(); // Closed before or while subscribing
+        }
+        feed.schedule(); // Calls onSubscribe on the delivery thread
+    }
+
+    /**
+     * Gets the number of current subscribers.
+     *
+     * @return The subscriber count.
+     */
+    public int getSubscriberCount() {
+        return feeds.size();
+    }
+
+    /**
+     * Gets the number of events dropped so far because a subscriber's buffer was full,
+     * counted once for each subscriber that missed the event.
+     *
+     * @return The dropped count.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of events one subscriber has missed because its buffer was full.
+     *
+     * @param subscriber The subscriber.
+     * @return The events dropped for it, or 0 if it is not subscribed.
+     */
+    public long getDroppedCount(Flow.Subscriber<?> subscriber) {
+        for (Feed feed : feeds) {
+            if (feed.subscriber == subscriber) {
+                return feed.dropped.sum();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stops listening to the car park and tells every subscriber the stream is complete
+     * once it has received the events already buffered for it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        carPark.removeListener(this);
+        for (Feed feed : feeds) {
+            feed.complete();
+        }
+    }
+
+    // Listener methods run on the gate's thread with the slot locked. Numbering is one atomic
+    // add and each buffer is lock-free, so gates publishing at once never wait on each other
+
+    @Override
+    public void slotAdded(ParkingSlot parkingSlot) {
+        publish(CarParkEvent.slotAdded(sequence.incrementAndGet(), parkingSlot.getSlotID(), System.currentTimeMillis()));
+    }
+
+    @Override
+    public void slotsAdded(List<ParkingSlot> parkingSlots) {
+        long now = System.currentTimeMillis(); // One clock read for the whole batch
+        long number = sequence.getAndAdd(parkingSlots.size()); // One block of numbers, so the batch's are consecutive
+        for (ParkingSlot parkingSlot : parkingSlots) {
+            publish(CarParkEvent.slotAdded(++number, parkingSlot.getSlotID(), now));
+        }
+    }
+
+    @Override
+    public void slotRemoved(ParkingSlot parkingSlot) {
+        publish(CarParkEvent.slotRemoved(sequence.incrementAndGet(), parkingSlot.getSlotID(), System.currentTimeMillis()));
+    }
+
+    @Override
+    public void carParked(ParkingSlot parkingSlot, Car car) {
+        publish(CarParkEvent.carParked(sequence.incrementAndGet(), parkingSlot.getSlotID(), car, car.getParkedAtMillis()));
+    }
+
+    @Override
+    public void carLeft(ParkingSlot parkingSlot, Car car, long leftAtMillis) {
+        publish(CarParkEvent.carLeft(sequence.incrementAndGet(), parkingSlot.getSlotID(), car, leftAtMillis));
+    }
+
+    private void publish(CarParkEvent event) {
+        for (Feed feed : feeds) {
+            feed.offer(event);
+        }
+    }
+
+    // One subscriber's buffer, demand and delivery. Gates add to the buffer from any thread;
+    // a single drain at a time, on the executor, hands events to the subscriber in buffer order
+    private final class Feed implements Flow.Subscription {
+        private final Flow.Subscriber<? super CarParkEvent> subscriber;
+        private final Queue<CarParkEvent> buffer; // Lock-free; its size is kept separately in buffered
+        private final AtomicInteger buffered; // Events in the buffer, never above bufferCapacity
+        private final AtomicLong requested; // Events the subscriber has asked for and not yet received
+        private final AtomicInteger pending; // Drain requests; only the caller that raises it from 0 starts a drain
+        private final LongAdder dropped; // Events dropped because this subscriber's buffer was full
+        private volatile boolean completing; // The publisher closed; complete once the buffer is empty
+        private volatile boolean cancelled;
+        private volatile Throwable failure; // A bad request, reported to the subscriber by the drain
+        private boolean subscribed; // Whether onSubscribe has been called; only touched by the drain
+
+        Feed(Flow.Subscriber<? super CarParkEvent> subscriber) {
+            this.subscriber = subscriber;
+            this.buffer = new ConcurrentLinkedQueue<>();
+            this.buffered = new AtomicInteger();
+            this.requested = new AtomicLong();
+            this.pending = new AtomicInteger();
+            this.dropped = new LongAdder();
+        }
+
+        // Adds an event without waiting, or drops it if the subscriber's buffer is full
+        void offer(CarParkEvent event) {
+            if (cancelled || completing) {
+                return;
+            }
+            if (buffered.incrementAndGet() > bufferCapacity) {
+                buffered.decrementAndGet();
+                dropped.increment();
+                CarParkEventPublisher.this.dropped.increment();
+                return;
+            }
+            buffer.offer(event);
+            schedule();
+        }
+
+        void complete() {
+            completing = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Requested " + n + " events; must be positive");
+            } else {
+                requested.accumulateAndGet(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            feeds.remove(this);
+            schedule(); // Lets the drain clear the buffer
+        }
+
+        void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    pending.set(0); // Cannot happen with a cached pool that is never shut down; try again next time
+                }
+            }
+        }
+
+        // Delivers as many buffered events as the subscriber has asked for, then finishes the
+        // stream if it has been cancelled, failed or completed; runs again if asked meanwhile
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                try {
+                    if (!subscribed) {
+                        subscribed = true;
+                        subscriber.onSubscribe(this);
+                    }
+                    long wanted = requested.get();
+                    long sent = 0;
+                    while (!cancelled && failure == null && sent < wanted) {
+                        CarParkEvent event = buffer.poll();
+                        if (event == null) {
+                            break;
+                        }
+                        buffered.decrementAndGet();
+                        subscriber.onNext(event);
+                        sent++;
+                    }
+                    if (sent > 0 && wanted != Long.MAX_VALUE) {
+                        requested.addAndGet(-sent); // Long.MAX_VALUE means unbounded and is never counted down
+                    }
+                    if (!cancelled && failure != null) {
+                        end();
+                        subscriber.onError(failure);
+                    } else if (!cancelled && completing && buffer.isEmpty()) {
+                        end();
+                        subscriber.onComplete();
+                    }
+                } catch (RuntimeException e) {
+                    // The subscriber failed; it gets no more events, and is told why if it can still listen
+                    if (!cancelled) {
+                        end();
+                        try {
+                            subscriber.onError(e);
+                        } catch (RuntimeException ignored) {
+                            // Nothing more can be done for this subscriber
+                        }
+                    }
+                }
+                if (cancelled) {
+                    buffer.clear();
+                    buffered.set(0);
+                }
+                missed = pending.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Stops the feed before its final signal, so nothing more is delivered to the subscriber
+        private void end() {
+            cancelled = true;
+            feeds.remove(this);
+        }
+    }
+}
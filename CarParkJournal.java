@@ -0,0 +1,431 @@
+/**
+* This class keeps an append-only journal of every change to a CarPark, so that
+* parked cars and their parking times survive a restart. Changes are written by a
+* background thread in batches, with one fsync per batch, and the journal is
+* periodically rewritten as a compact copy of the current state. A batch that
+* cannot be written is kept and tried again, and failures are reported through
+* the car park's log and metrics.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/*
+ * File layout: a 4-byte magic number, then records of
+ *   [int payload length][int CRC32 of payload][payload]
+ * where the payload is a type byte followed by the slot ID and, for a park, the car's
+ * details and parking time. Strings are an unsigned 16-bit byte count and that many
+ * UTF-8 bytes; the count 0xffff stands for a missing (null) string. A record whose length or checksum does not match (a write
+ * cut short by a crash) ends the journal; it and anything after it is cut off on open.
+ *
+ * Replaying is forgiving: a park moves out whatever is in the way and a leave of an
+ * empty slot does nothing. That lets compaction copy the live state while gates keep
+ * changing it, because replaying the changes queued meanwhile on top still ends in
+ * the right state.
+ */
+public class CarParkJournal implements CarParkListener, Closeable {
+    private static final int MAGIC = 0x43504a31; // "CPJ1"
+    private static final byte SLOT_ADDED = 1;
+    private static final byte SLOT_REMOVED = 2;
+    private static final byte CAR_PARKED = 3;
+    private static final byte CAR_LEFT = 4;
+    private static final int MAX_BATCH = 4096; // Most records written per fsync
+    private static final long MIN_COMPACTION_RECORDS = 100_000; // Never compact more often than this
+    private static final int MAX_QUEUED = 1 << 20; // Most changes waiting to be written before they are replaced by a compaction
+    private static final long MAX_RETRY_DELAY_MILLIS = 10_000; // Longest wait between attempts at a failing write
+    private static final int CLOSING_ATTEMPTS = 3; // Attempts left for a failing write once the journal is closing
+    private static final int NULL_STRING = 0xffff; // String length that stands for null
+
+    private final CarPark carPark;
+    private final Path file;
+    private final BlockingQueue<Entry> queue; // Changes waiting to be written
+    private Thread writer; // Background thread that writes and fsyncs batches, started by open
+    private FileChannel channel; // Open journal file, used only by the writer thread after opening
+    private ByteBuffer buffer; // Reused encoding buffer, used only by the writer thread
+    private long recordsSinceCompaction;
+    private volatile boolean compactionRequested;
+    private volatile boolean running;
+
+    // One change waiting to be written; the parking time is captured when the change happens
+    private static final class Entry {
+        final byte type;
+        final String slotID;
+        final Car car;
+        final long parkedAtMillis;
+
+        Entry(byte type, String slotID, Car car, long parkedAtMillis) {
+            this.type = type;
+            this.slotID = slotID;
+            this.car = car;
+            this.parkedAtMillis = parkedAtMillis;
+        }
+    }
+
+    /**
+     * Opens a journal for a car park. Any changes already in the file are replayed into
+     * the car park first, then every further change is recorded.
+     *
+     * @param file    The journal file; it is created if it does not exist.
+     * @param carPark The car park to restore and record; it should be empty.
+     * @return The open journal.
+     * @throws IOException If the file cannot be read or written.
+     */
+    public static CarParkJournal open(Path file, CarPark carPark) throws IOException {
+        CarParkJournal journal = new CarParkJournal(file, carPark);
+        journal.start();
+        return journal;
+    }
+
+    // Opens the file and replays it; open starts the writer and the recording once this has returned
+    private CarParkJournal(Path file, CarPark carPark) throws IOException {
+        this.carPark = carPark;
+        this.file = file;
+        this.queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+        this.buffer = ByteBuffer.allocateDirect(1 << 20);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long validLength = replay();
+        if (validLength < channel.size()) {
+            channel.truncate(validLength); // Drop a record left half-written by a crash
+        }
+        if (validLength == 0) {
+            writeMagic(channel);
+        }
+        channel.position(channel.size());
+    }
+
+    // Starts the writer thread, then listens to the car park
+    private void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "carpark-journal");
+        writer.setDaemon(true);
+        writer.start();
+        carPark.addListener(this); // Start recording only after the replay, so it is not written twice
+    }
+
+    /**
+     * Asks the writer thread to rewrite the journal as a compact copy of the current state.
+     * This also happens by itself once enough changes have been written.
+     */
+    public void compact() {
+        compactionRequested = true;
+    }
+
+    /**
+     * Stops recording, writes every change still queued and closes the file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        carPark.removeListener(this);
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // Listener methods run on the gate's thread with the slot locked, so they only queue the change
+
+    @Override
+    public void slotAdded(ParkingSlot parkingSlot) {
+        enqueue(new Entry(SLOT_ADDED, parkingSlot.getSlotID(), null, 0));
+    }
+
+    @Override
+    public void slotsAdded(List<ParkingSlot> parkingSlots) {
+        for (ParkingSlot parkingSlot : parkingSlots) {
+            enqueue(new Entry(SLOT_ADDED, parkingSlot.getSlotID(), null, 0));
+        }
+    }
+
+    @Override
+    public void slotRemoved(ParkingSlot parkingSlot) {
+        enqueue(new Entry(SLOT_REMOVED, parkingSlot.getSlotID(), null, 0));
+    }
+
+    @Override
+    public void carParked(ParkingSlot parkingSlot, Car car) {
+        enqueue(new Entry(CAR_PARKED, parkingSlot.getSlotID(), car, car.getParkedAtMillis()));
+    }
+
+    @Override
+    public void carLeft(ParkingSlot parkingSlot, Car car) {
+        enqueue(new Entry(CAR_LEFT, parkingSlot.getSlotID(), null, 0));
+    }
+
+    // Queues a change without waiting. If the writer has fallen so far behind that the queue is
+    // full, the change is dropped and a compaction asked for instead: it copies the live state,
+    // which already includes the change, so nothing is lost once the file can be written again
+    private void enqueue(Entry entry) {
+        if (!queue.offer(entry)) {
+            compactionRequested = true;
+        }
+    }
+
+    // Writer thread: waits for changes, then writes everything queued with a single fsync (group commit).
+    // A batch that fails is kept and written again after a pause that grows with each failure
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        int failures = 0; // Failed attempts in a row
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch, MAX_BATCH - 1);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                    recordsSinceCompaction += batch.size();
+                    batch.clear();
+                }
+                if (compactionRequested
+                        || recordsSinceCompaction >= Math.max(MIN_COMPACTION_RECORDS, 4L * carPark.getSlotCount())) {
+                    compactionRequested = false;
+                    try {
+                        compactNow();
+                    } catch (IOException | RuntimeException e) {
+                        compactionRequested = true; // Try again next time round
+                        throw e;
+                    }
+                }
+                failures = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                failures++;
+                carPark.getMetrics().recordJournalFailure();
+                int pending = batch.size();
+                carPark.getLog().log(CarParkLog.Level.ERROR, () -> "Car park journal could not be written, "
+                        + pending + " changes kept for another attempt: " + e);
+                if (!running && failures >= CLOSING_ATTEMPTS) {
+                    int lost = batch.size() + queue.size();
+                    carPark.getLog().log(CarParkLog.Level.ERROR, () -> "Car park journal closed with " + lost + " changes unwritten.");
+                    return;
+                }
+                try {
+                    Thread.sleep(Math.min(MAX_RETRY_DELAY_MILLIS, 100L << Math.min(failures, 10)));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Writes a batch with one fsync; if that fails, whatever part of it reached the file is cut off again
+    private void writeBatch(List<Entry> batch) throws IOException {
+        buffer.clear();
+        for (Entry entry : batch) {
+            int start = buffer.position();
+            try {
+                encode(entry.type, entry.slotID, entry.car, entry.parkedAtMillis);
+            } catch (RuntimeException e) {
+                // A record that can never be encoded is skipped rather than blocking every change behind it
+                buffer.position(start);
+                carPark.getMetrics().recordJournalFailure();
+                carPark.getLog().log(CarParkLog.Level.ERROR, () -> "Car park journal skipped a change to slot "
+                        + entry.slotID + " that cannot be recorded: " + e);
+            }
+        }
+        buffer.flip();
+        long start = channel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false); // One fsync for the whole batch
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                compactionRequested = true; // A half-written record is left behind; rewriting the file clears it
+            }
+            throw e;
+        }
+    }
+
+    // Writes the live state to a new file and swaps it in place of the journal
+    private void compactNow() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeMagic(out);
+            buffer.clear();
+            for (ParkingSlot parkingSlot : carPark.getParkingSlots()) {
+                Car car = parkingSlot.getParkedCar();
+                if (buffer.position() >= (1 << 20)) {
+                    flush(out); // Write out every megabyte or so rather than holding the whole state
+                }
+                encode(SLOT_ADDED, parkingSlot.getSlotID(), null, 0);
+                if (car != null) {
+                    encode(CAR_PARKED, parkingSlot.getSlotID(), car, car.getParkedAtMillis());
+                }
+            }
+            flush(out);
+            out.force(false);
+        }
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            recordsSinceCompaction = 0;
+        } finally {
+            // Carry on appending to whichever file is in place, so a failed move does not stop the journal
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private void flush(FileChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeMagic(FileChannel out) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4).putInt(0, MAGIC);
+        while (magic.hasRemaining()) {
+            out.write(magic);
+        }
+    }
+
+    // Appends one record to the buffer, growing the buffer if the record would not fit
+    private void encode(byte type, String slotID, Car car, long parkedAtMillis) {
+        byte[][] strings = type == CAR_PARKED
+                ? new byte[][] { utf8(slotID), utf8(car.getRegistrationNumber()), utf8(car.getMake()),
+                        utf8(car.getModel()), utf8(car.getYear()) }
+                : new byte[][] { utf8(slotID) };
+        int size = 8 + 1 + (type == CAR_PARKED ? 8 : 0);
+        for (byte[] string : strings) {
+            size += 2 + (string != null ? string.length : 0);
+        }
+        if (buffer.remaining() < size) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        int start = buffer.position();
+        buffer.position(start + 8); // Leave room for the length and checksum
+        buffer.put(type);
+        for (byte[] string : strings) {
+            if (string == null) {
+                buffer.putShort((short) NULL_STRING);
+            } else {
+                buffer.putShort((short) string.length);
+                buffer.put(string);
+            }
+        }
+        if (type == CAR_PARKED) {
+            buffer.putLong(parkedAtMillis);
+        }
+        int end = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + 8).limit(end));
+        buffer.putInt(start, end - start - 8);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+
+    // Reads the journal into the car park and returns the length of its valid part
+    private long replay() throws IOException {
+        long size = channel.size();
+        if (size < 4) {
+            return 0;
+        }
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (in.getInt() != MAGIC) {
+            throw new IOException(file + " is not a car park journal");
+        }
+        CRC32 crc = new CRC32();
+        long validLength = in.position();
+        while (in.remaining() >= 8) {
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length <= 0 || length > in.remaining()) {
+                break; // Cut short by a crash
+            }
+            ByteBuffer payload = in.slice().limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break; // Damaged record
+            }
+            apply(payload);
+            in.position(in.position() + length);
+            validLength = in.position();
+        }
+        return validLength;
+    }
+
+    private void apply(ByteBuffer payload) {
+        byte type = payload.get();
+        String slotID = getString(payload);
+        if (type == SLOT_ADDED) {
+            carPark.addParkingSlot(new ParkingSlot(slotID));
+        } else if (type == SLOT_REMOVED) {
+            carPark.restoreSlotRemoved(slotID);
+        } else if (type == CAR_PARKED) {
+            Car car = new Car(getString(payload), getString(payload), getString(payload), getString(payload));
+            carPark.restoreCar(slotID, car, payload.getLong());
+        } else if (type == CAR_LEFT) {
+            carPark.restoreLeave(slotID);
+        }
+    }
+
+    // Strings are stored as an unsigned 16-bit byte count followed by at most 65534 UTF-8 bytes;
+    // CarPark refuses longer car details, so anything longer here is a mistake and is never cut short
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > CarPark.MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long for the journal");
+        }
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xffff;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(in.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+* This interface lets other parts of the system react to changes in a CarPark
+* without the CarPark itself depending on any UI toolkit.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.List;
+
+public interface CarParkListener {
+
+    /**
+     * Called after a parking slot has been added to the car park.
+     *
+     * @param parkingSlot The parking slot that was added.
+     */
+    default void slotAdded(ParkingSlot parkingSlot) {
+    }
+
+    /**
+     * Called once after a batch of parking slots has been added with addParkingSlots.
+     * By default this reports each slot to slotAdded; listeners that can handle the
+     * whole batch at once should override it.
+     *
+     * @param parkingSlots The parking slots that were added, in the order they were added.
+     */
+    default void slotsAdded(List<ParkingSlot> parkingSlots) {
+        for (ParkingSlot parkingSlot : parkingSlots) {
+            slotAdded(parkingSlot);
+        }
+    }
+
+    /**
+     * Called after a parking slot has been deleted from the car park.
+     *
+     * @param parkingSlot The parking slot that was deleted.
+     */
+    default void slotRemoved(ParkingSlot parkingSlot) {
+    }
+
+    /**
+     * Called after a car has been parked. The call is made while the slot is locked,
+     * so events for one slot always arrive in order; listeners should return quickly.
+     *
+     * @param parkingSlot The parking slot the car was parked in.
+     * @param car         The car that was parked.
+     */
+    default void carParked(ParkingSlot parkingSlot, Car car) {
+    }
+
+    /**
+     * Called after a car has left its parking slot. The call is made while the slot is locked.
+     *
+     * @param parkingSlot The parking slot the car was removed from.
+     * @param car         The car that left.
+     */
+    default void carLeft(ParkingSlot parkingSlot, Car car) {
+    }
+
+    /**
+     * Called after a car has left its parking slot, with the time it left. For a gate
+     * event this is when the exit camera saw the car, which may be a little earlier than
+     * the call. By default this reports to carLeft(ParkingSlot, Car); listeners that
+     * record or publish the departure time should override it.
+     *
+     * @param parkingSlot  The parking slot the car was removed from.
+     * @param car          The car that left.
+     * @param leftAtMillis When the car left, in epoch milliseconds.
+     */
+    default void carLeft(ParkingSlot parkingSlot, Car car, long leftAtMillis) {
+        carLeft(parkingSlot, car);
+    }
+}
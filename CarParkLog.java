@@ -0,0 +1,65 @@
+/**
+* This interface is where a CarPark sends its messages instead of printing them.
+* Messages are built lazily from a Supplier, so a car park with no log, or a log
+* that ignores a level, never builds the strings at all.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.function.Supplier;
+
+public interface CarParkLog {
+
+    /**
+     * How important a message is, from least to most.
+     */
+    enum Level {
+        DEBUG, // Detail that is only useful when tracing a problem
+        INFO, // Normal operations, such as a car parking or leaving
+        WARN, // Requests that were refused, such as parking an already parked car
+        ERROR // Failures that put data at risk, such as a journal that cannot be written
+    }
+
+    /**
+     * A log that discards everything; the default for a new CarPark.
+     */
+    CarParkLog NONE = new CarParkLog() {
+        @Override
+        public boolean isEnabled(Level level) {
+            return false;
+        }
+
+        @Override
+        public void write(Level level, String message) {
+        }
+    };
+
+    /**
+     * Checks whether messages at a level are recorded.
+     *
+     * @param level The level to check.
+     * @return True if messages at that level are recorded.
+     */
+    boolean isEnabled(Level level);
+
+    /**
+     * Records a message that has already been built. Callers should normally use log instead.
+     *
+     * @param level   The message's level.
+     * @param message The message.
+     */
+    void write(Level level, String message);
+
+    /**
+     * Records a message if its level is enabled, building it only then.
+     *
+     * @param level   The message's level.
+     * @param message Builds the message.
+     */
+    default void log(Level level, Supplier<String> message) {
+        if (isEnabled(level)) {
+            write(level, message.get());
+        }
+    }
+}
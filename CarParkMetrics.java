@@ -0,0 +1,387 @@
+/**
+* This class keeps live operational metrics for a CarPark: how many parks and
+* departures succeeded or failed, how fast they were, and how full the car park
+* is. Counters are LongAdders and latencies go into LatencyHistograms, so gates
+* record metrics without contending with each other. Metrics can be pulled with
+* snapshot() or watched over JMX once registered.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class CarParkMetrics implements CarParkMetricsMXBean {
+    private static final long RATE_WINDOW_MILLIS = 1000; // Rates are worked out over at least this long
+
+    private final SlotStore slotStore; // The car park's slot store, whose counts give the occupancy
+    private final LongAdder parks; // Cars parked
+    private final LongAdder failedParks; // Parks refused: slot taken or missing, car already parked, car park full
+    private final LongAdder departures; // Cars that left
+    private final LongAdder failedDepartures; // Departures of cars or slots that were not parked
+    private final LongAdder lookups; // Registration lookups
+    private final LongAdder journalFailures; // Journal batches or records that could not be written
+    private final LatencyHistogram parkLatency;
+    private final LatencyHistogram departureLatency;
+    private final LatencyHistogram lookupLatency;
+
+    // Rate window, guarded by this; rates are only worked out when someone reads them
+    private long rateSampleMillis;
+    private long rateSampleParks;
+    private long rateSampleDepartures;
+    private double parksPerSecond;
+    private double departuresPerSecond;
+
+    /**
+     * A copy of every metric taken at one moment.
+     */
+    public static final class Snapshot {
+        private final long timeMillis;
+        private final int slotCount;
+        private final int occupiedCount;
+        private final long parks;
+        private final long failedParks;
+        private final long departures;
+        private final long failedDepartures;
+        private final long lookups;
+        private final double parksPerSecond;
+        private final double departuresPerSecond;
+        private final LatencyHistogram.Summary parkLatency;
+        private final LatencyHistogram.Summary departureLatency;
+        private final LatencyHistogram.Summary lookupLatency;
+
+        Snapshot(CarParkMetrics metrics) {
+            timeMillis = System.currentTimeMillis();
+            slotCount = metrics.getSlotCount();
+            occupiedCount = metrics.getOccupiedCount();
+            parks = metrics.parks.sum();
+            failedParks = metrics.failedParks.sum();
+            departures = metrics.departures.sum();
+            failedDepartures = metrics.failedDepartures.sum();
+            lookups = metrics.lookups.sum();
+            parksPerSecond = metrics.getParksPerSecond();
+            departuresPerSecond = metrics.getDeparturesPerSecond();
+            parkLatency = metrics.parkLatency.summarize();
+            departureLatency = metrics.departureLatency.summarize();
+            lookupLatency = metrics.lookupLatency.summarize();
+        }
+
+        /**
+         * When the snapshot was taken.
+         *
+         * @return The time in epoch milliseconds.
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * Gets the number of slots.
+         *
+         * @return The slot count.
+         */
+        public int getSlotCount() {
+            return slotCount;
+        }
+
+        /**
+         * Gets the number of occupied slots.
+         *
+         * @return The occupied count.
+         */
+        public int getOccupiedCount() {
+            return occupiedCount;
+        }
+
+        /**
+         * Gets the number of free slots.
+         *
+         * @return The free count.
+         */
+        public int getFreeCount() {
+            return Math.max(0, slotCount - occupiedCount);
+        }
+
+        /**
+         * Gets the number of cars parked.
+         *
+         * @return The park count.
+         */
+        public long getParks() {
+            return parks;
+        }
+
+        /**
+         * Gets the number of parks that were refused.
+         *
+         * @return The refused park count.
+         */
+        public long getFailedParks() {
+            return failedParks;
+        }
+
+        /**
+         * Gets the number of cars that left.
+         *
+         * @return The departure count.
+         */
+        public long getDepartures() {
+            return departures;
+        }
+
+        /**
+         * Gets the number of departures that were refused.
+         *
+         * @return The refused departure count.
+         */
+        public long getFailedDepartures() {
+            return failedDepartures;
+        }
+
+        /**
+         * Gets the number of registration lookups.
+         *
+         * @return The lookup count.
+         */
+        public long getLookups() {
+            return lookups;
+        }
+
+        /**
+         * Gets the recent rate of parks.
+         *
+         * @return Parks per second.
+         */
+        public double getParksPerSecond() {
+            return parksPerSecond;
+        }
+
+        /**
+         * Gets the recent rate of departures.
+         *
+         * @return Departures per second.
+         */
+        public double getDeparturesPerSecond() {
+            return departuresPerSecond;
+        }
+
+        /**
+         * Gets the park latencies.
+         *
+         * @return The park latency summary, in nanoseconds.
+         */
+        public LatencyHistogram.Summary getParkLatency() {
+            return parkLatency;
+        }
+
+        /**
+         * Gets the departure latencies.
+         *
+         * @return The departure latency summary, in nanoseconds.
+         */
+        public LatencyHistogram.Summary getDepartureLatency() {
+            return departureLatency;
+        }
+
+        /**
+         * Gets the registration lookup latencies.
+         *
+         * @return The lookup latency summary, in nanoseconds.
+         */
+        public LatencyHistogram.Summary getLookupLatency() {
+            return lookupLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "Slots: " + slotCount + ", occupied: " + occupiedCount + ", free: " + getFreeCount() + "\n"
+                    + "Parks: " + parks + " (" + failedParks + " refused, " + String.format("%.1f", parksPerSecond) + "/s)\n"
+                    + "Departures: " + departures + " (" + failedDepartures + " refused, " + String.format("%.1f", departuresPerSecond) + "/s)\n"
+                    + "Lookups: " + lookups + "\n"
+                    + "Park latency ns: " + parkLatency + "\n"
+                    + "Departure latency ns: " + departureLatency + "\n"
+                    + "Lookup latency ns: " + lookupLatency;
+        }
+    }
+
+    /**
+     * Creates the metrics for a car park. CarPark creates its own; use CarPark.getMetrics().
+     *
+     * @param slotStore The slot store of the car park whose occupancy is reported.
+     */
+    CarParkMetrics(SlotStore slotStore) {
+        this.slotStore = slotStore;
+        parks = new LongAdder();
+        failedParks = new LongAdder();
+        departures = new LongAdder();
+        failedDepartures = new LongAdder();
+        lookups = new LongAdder();
+        journalFailures = new LongAdder();
+        parkLatency = new LatencyHistogram();
+        departureLatency = new LatencyHistogram();
+        lookupLatency = new LatencyHistogram();
+        rateSampleMillis = System.currentTimeMillis();
+    }
+
+    // Recorded by CarPark on the gate's thread
+
+    void recordPark(boolean parked, long nanos) {
+        (parked ? parks : failedParks).increment();
+        parkLatency.record(nanos);
+    }
+
+    void recordDeparture(boolean left, long nanos) {
+        (left ? departures : failedDepartures).increment();
+        departureLatency.record(nanos);
+    }
+
+    void recordLookup(long nanos) {
+        lookups.increment();
+        lookupLatency.record(nanos);
+    }
+
+    // Recorded by CarParkJournal on its writer thread
+
+    void recordJournalFailure() {
+        journalFailures.increment();
+    }
+
+    /**
+     * Takes a copy of every metric.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server so JMX tools can see them.
+     *
+     * @param name A name telling this car park apart from others in the same JVM.
+     * @return The name the metrics were registered under.
+     * @throws JMException If the metrics cannot be registered, e.g. because the name is taken.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("CarPark:type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public int getSlotCount() {
+        return slotStore.size();
+    }
+
+    @Override
+    public int getOccupiedCount() {
+        return slotStore.occupiedCount();
+    }
+
+    @Override
+    public int getFreeCount() {
+        return Math.max(0, slotStore.size() - slotStore.occupiedCount());
+    }
+
+    @Override
+    public long getParkCount() {
+        return parks.sum();
+    }
+
+    @Override
+    public long getFailedParkCount() {
+        return failedParks.sum();
+    }
+
+    @Override
+    public long getDepartureCount() {
+        return departures.sum();
+    }
+
+    @Override
+    public long getFailedDepartureCount() {
+        return failedDepartures.sum();
+    }
+
+    @Override
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getJournalFailureCount() {
+        return journalFailures.sum();
+    }
+
+    @Override
+    public synchronized double getParksPerSecond() {
+        updateRates();
+        return parksPerSecond;
+    }
+
+    @Override
+    public synchronized double getDeparturesPerSecond() {
+        updateRates();
+        return departuresPerSecond;
+    }
+
+    @Override
+    public long getParkLatencyP50() {
+        return parkLatency.summarize().getP50();
+    }
+
+    @Override
+    public long getParkLatencyP99() {
+        return parkLatency.summarize().getP99();
+    }
+
+    @Override
+    public long getParkLatencyMax() {
+        return parkLatency.summarize().getMax();
+    }
+
+    @Override
+    public long getDepartureLatencyP50() {
+        return departureLatency.summarize().getP50();
+    }
+
+    @Override
+    public long getDepartureLatencyP99() {
+        return departureLatency.summarize().getP99();
+    }
+
+    @Override
+    public long getLookupLatencyP50() {
+        return lookupLatency.summarize().getP50();
+    }
+
+    @Override
+    public long getLookupLatencyP99() {
+        return lookupLatency.summarize().getP99();
+    }
+
+    @Override
+    public void resetLatencies() {
+        parkLatency.reset();
+        departureLatency.reset();
+        lookupLatency.reset();
+    }
+
+    // Works out the rates since the last sample, once at least a window has passed; called holding this
+    private void updateRates() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - rateSampleMillis;
+        if (elapsed >= RATE_WINDOW_MILLIS) {
+            long parkCount = parks.sum();
+            long departureCount = departures.sum();
+            parksPerSecond = (parkCount - rateSampleParks) * 1000.0 / elapsed;
+            departuresPerSecond = (departureCount - rateSampleDepartures) * 1000.0 / elapsed;
+            rateSampleMillis = now;
+            rateSampleParks = parkCount;
+            rateSampleDepartures = departureCount;
+        }
+    }
+}
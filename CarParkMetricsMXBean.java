@@ -0,0 +1,52 @@
+/**
+* This interface is the JMX view of a car park's live metrics, so tools such as
+* JConsole or VisualVM can watch occupancy and gate performance while it runs.
+* Latencies are in nanoseconds.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+public interface CarParkMetricsMXBean {
+
+    int getSlotCount();
+
+    int getOccupiedCount();
+
+    int getFreeCount();
+
+    long getParkCount();
+
+    long getFailedParkCount();
+
+    long getDepartureCount();
+
+    long getFailedDepartureCount();
+
+    long getLookupCount();
+
+    long getJournalFailureCount();
+
+    double getParksPerSecond();
+
+    double getDeparturesPerSecond();
+
+    long getParkLatencyP50();
+
+    long getParkLatencyP99();
+
+    long getParkLatencyMax();
+
+    long getDepartureLatencyP50();
+
+    long getDepartureLatencyP99();
+
+    long getLookupLatencyP50();
+
+    long getLookupLatencyP99();
+
+    /**
+     * Clears the latency histograms, e.g. after a deployment, keeping the counters.
+     */
+    void resetLatencies();
+}
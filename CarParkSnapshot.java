@@ -0,0 +1,264 @@
+/**
+* This class saves a whole car park to a compact binary file and loads it back:
+* the slot IDs, which slots are occupied, the parked cars and their parking times.
+* Files are read through a memory map, so a site of 100,000 bays loads in
+* milliseconds instead of being entered again by hand.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Version 1 layout, all big-endian:
+ *   int    magic "CPKS"
+ *   int    format version
+ *   long   time the snapshot was taken, epoch milliseconds
+ *   int    slot count (n)
+ *   int    occupied count (m)
+ *   long[] occupancy bitmap, (n + 63) / 64 words, bit i set if slot i is occupied
+ *   long[] parking times of the m occupied slots, in slot order
+ *   then n slot IDs, then for each occupied slot its registration, make, model and year,
+ *   every string stored as an unsigned 16-bit byte count followed by UTF-8 bytes, the
+ *   count 0xffff standing for a missing (null) make, model or year
+ * The fixed-size sections come first so they can be read in place from the mapped file.
+ */
+public class CarParkSnapshot {
+    private static final int MAGIC = 0x43504b53; // "CPKS"
+    private static final int VERSION = 1;
+    private static final int NULL_STRING = 0xffff; // String length that stands for null
+
+    /**
+     * Saves a car park to a snapshot file, replacing the file only once the new one is complete
+     * and on disk, so a crash leaves either the old snapshot or the new one.
+     *
+     * @param carPark The car park to save.
+     * @param file    The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(CarPark carPark, Path file) throws IOException {
+        // Read each slot once so the bitmap, times and cars all agree even while gates are busy
+        List<ParkingSlot> slots = carPark.getParkingSlots();
+        int slotCount = slots.size();
+        Car[] cars = new Car[slotCount];
+        long[] occupancy = new long[(slotCount + 63) >>> 6];
+        int occupiedCount = 0;
+        for (int i = 0; i < slotCount; i++) {
+            cars[i] = slots.get(i).getParkedCar();
+            if (cars[i] != null) {
+                occupancy[i >>> 6] |= 1L << i;
+                occupiedCount++;
+            }
+        }
+
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(slotCount);
+            out.writeInt(occupiedCount);
+            for (long word : occupancy) {
+                out.writeLong(word);
+            }
+            for (Car car : cars) {
+                if (car != null) {
+                    out.writeLong(car.getParkedAtMillis());
+                }
+            }
+            for (ParkingSlot parkingSlot : slots) {
+                writeString(out, parkingSlot.getSlotID());
+            }
+            for (Car car : cars) {
+                if (car != null) {
+                    writeString(out, car.getRegistrationNumber());
+                    writeString(out, car.getMake());
+                    writeString(out, car.getModel());
+                    writeString(out, car.getYear());
+                }
+            }
+            out.flush();
+            channel.force(true); // The contents must be on disk before the rename makes them the snapshot
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.toAbsolutePath().getParent()); // Make the rename itself survive a crash
+    }
+
+    /**
+     * Loads a snapshot file into an empty car park, parking the cars in it with their
+     * recorded parking times. Loading into a car park that gates are already using would
+     * move their cars out from under them, so a car park with slots is refused.
+     *
+     * @param file    The file to read.
+     * @param carPark The car park to load into; it must have no slots.
+     * @throws IOException           If the file cannot be read, is truncated or corrupt, or is not a snapshot
+     *                               this version understands; the car park is then left empty.
+     * @throws IllegalStateException If the car park already has slots.
+     */
+    public static void read(Path file, CarPark carPark) throws IOException {
+        load(file, carPark, false);
+    }
+
+    /**
+     * Replaces a whole car park with the one saved in a snapshot file. The file is read and
+     * checked first; only if it is sound are the car park's cars taken out and its slots
+     * deleted, as if a user had done so, before the snapshot's slots and cars are loaded.
+     * Listeners such as the journal see every one of those changes. Gates should be
+     * stopped meanwhile.
+     *
+     * @param file    The file to read.
+     * @param carPark The car park to replace.
+     * @throws IOException           If the file cannot be read, is truncated or corrupt, or is not a snapshot
+     *                               this version understands; the car park is then left as it was.
+     * @throws IllegalStateException If a slot with one of the snapshot's IDs was added while it was being replaced.
+     */
+    public static void replace(Path file, CarPark carPark) throws IOException {
+        load(file, carPark, true);
+    }
+
+    private static void load(Path file, CarPark carPark, boolean replace) throws IOException {
+        if (!replace && carPark.getSlotCount() > 0) {
+            throw new IllegalStateException("A snapshot can only be loaded into an empty car park, this one has "
+                    + carPark.getSlotCount() + " slots");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a car park snapshot");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 28 || in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a car park snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has snapshot format version " + version + ", expected " + VERSION);
+            }
+            in.getLong(); // Time the snapshot was taken, not needed to load it
+            int slotCount = in.getInt();
+            int occupiedCount = in.getInt();
+            if (slotCount < 0 || occupiedCount < 0 || occupiedCount > slotCount) {
+                throw new IOException(file + " is corrupt: " + occupiedCount + " of " + slotCount + " slots occupied");
+            }
+
+            // Read the bitmap and parking times in place through views of the mapped file
+            int words = (int) (((long) slotCount + 63) >>> 6);
+            // Every slot ID takes at least its 2-byte length, so a count the file cannot hold is refused before anything is sized by it
+            require(in, ((long) words + occupiedCount) * Long.BYTES + (long) slotCount * Short.BYTES, file);
+            LongBuffer occupancy = in.slice().asLongBuffer().limit(words);
+            in.position(in.position() + words * Long.BYTES);
+            LongBuffer parkedTimes = in.slice().asLongBuffer().limit(occupiedCount);
+            in.position(in.position() + occupiedCount * Long.BYTES);
+
+            // Read and check the whole file before touching the car park, so a corrupt
+            // snapshot is refused with nothing half loaded
+            String[] slotIDs = new String[slotCount];
+            Set<String> seenIDs = new HashSet<>();
+            List<ParkingSlot> slots = new ArrayList<>(slotCount);
+            for (int i = 0; i < slotCount; i++) {
+                slotIDs[i] = readString(in, file);
+                if (slotIDs[i] == null || slotIDs[i].isEmpty() || !seenIDs.add(slotIDs[i])) {
+                    throw new IOException(file + " is corrupt: slot " + i + " has a missing or repeated ID");
+                }
+                slots.add(new ParkingSlot(slotIDs[i]));
+            }
+            Car[] cars = new Car[slotCount];
+            Set<String> seenRegistrations = new HashSet<>();
+            int car = 0;
+            for (int i = 0; i < slotCount; i++) {
+                if ((occupancy.get(i >>> 6) & (1L << i)) != 0) {
+                    if (car == occupiedCount) {
+                        throw new IOException(file + " is corrupt: more slots are marked occupied than the " + occupiedCount + " recorded");
+                    }
+                    cars[i] = new Car(readString(in, file), readString(in, file), readString(in, file), readString(in, file));
+                    String registrationNumber = cars[i].getRegistrationNumber();
+                    if (registrationNumber == null || registrationNumber.isEmpty() || !seenRegistrations.add(registrationNumber)) {
+                        throw new IOException(file + " is corrupt: the car in slot " + slotIDs[i] + " has a missing or repeated registration");
+                    }
+                    car++;
+                }
+            }
+            if (car != occupiedCount) {
+                throw new IOException(file + " is corrupt: " + car + " slots are marked occupied but " + occupiedCount + " are recorded");
+            }
+
+            if (replace) {
+                for (ParkingSlot parkingSlot : carPark.getParkingSlots()) {
+                    carPark.restoreSlotRemoved(parkingSlot.getSlotID()); // Takes any car out, then deletes the slot
+                }
+            }
+            if (carPark.addParkingSlots(slots) != slotCount) { // One bulk add sizes the store once and notifies listeners once
+                throw new IllegalStateException("Slots were added to the car park while the snapshot was being loaded");
+            }
+            car = 0;
+            for (int i = 0; i < slotCount; i++) {
+                if (cars[i] != null) {
+                    carPark.restoreCar(slotIDs[i], cars[i], parkedTimes.get(car++));
+                }
+            }
+        }
+    }
+
+    // Flushes a directory so a file just renamed into it is still there after a crash
+    private static void syncDirectory(Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms, such as Windows, cannot open a directory; the rename is as durable as they allow
+        }
+    }
+
+    // CarPark refuses car details longer than CarPark.MAX_FIELD_BYTES, so nothing is ever cut short here
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > CarPark.MAX_FIELD_BYTES) {
+            throw new IOException("String of " + bytes.length + " bytes is too long for a snapshot");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in, Path file) throws IOException {
+        require(in, Short.BYTES, file);
+        int length = in.getShort() & 0xffff;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        require(in, length, file);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Refuses a file that ends before the bytes the next field needs
+    private static void require(ByteBuffer in, long bytes, Path file) throws IOException {
+        if (bytes > in.remaining()) {
+            throw new IOException(file + " is corrupt or truncated at byte " + in.position());
+        }
+    }
+}
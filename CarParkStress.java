@@ -0,0 +1,227 @@
+/**
+* This class hammers one CarPark from many gate threads at once and then checks
+* that it is still consistent. Run it from the command line:
+*   javac *.java
+*   java CarParkStress [threads=8] [slots=64] [plates=96] [seconds=2] [rounds=5]
+* Every thread picks random operations on a small, shared set of slots and
+* registration numbers, so they keep colliding: parkCar, allocateAndPark,
+* removeCarByRegistration, removeCarBySlotID, and deleting a slot and adding it
+* back. Once the threads stop, each round checks that every slot holds at most
+* one car, every registration number is parked at most once and is found where
+* it is parked, no registration is left claimed by a car that is not parked,
+* and the slot store's counts agree with the slots themselves. Any broken rule
+* is printed and the program exits with status 1.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CarParkStress {
+    private static final String CHECK_SLOT = "CHECK"; // Extra slot used to test for leftover registration claims
+
+    private final int threads;
+    private final int slots;
+    private final int plates;
+    private final long runNanos;
+    private final LongAdder operations; // Calls made by every thread together
+    private CarPark carPark;
+
+    private CarParkStress(int threads, int slots, int plates, double seconds) {
+        this.threads = threads;
+        this.slots = slots;
+        this.plates = plates;
+        this.runNanos = (long) (seconds * 1e9);
+        this.operations = new LongAdder();
+    }
+
+    /**
+     * Runs the stress rounds.
+     *
+     * @param args Optional settings: threads=..., slots=..., plates=..., seconds=... per round and rounds=....
+     * @throws InterruptedException If interrupted while waiting for the gate threads.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int slots = 64;
+        int plates = 96; // More cars than slots, so the car park is often full
+        double seconds = 2;
+        int rounds = 5;
+        for (String arg : args) {
+            if (arg.startsWith("threads=")) {
+                threads = Integer.parseInt(arg.substring(8));
+            } else if (arg.startsWith("slots=")) {
+                slots = Integer.parseInt(arg.substring(6));
+            } else if (arg.startsWith("plates=")) {
+                plates = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("seconds=")) {
+                seconds = Double.parseDouble(arg.substring(8));
+            } else if (arg.startsWith("rounds=")) {
+                rounds = Integer.parseInt(arg.substring(7));
+            }
+        }
+
+        int failedRounds = 0;
+        for (int round = 1; round <= rounds; round++) {
+            CarParkStress stress = new CarParkStress(threads, slots, plates, seconds);
+            stress.setUp();
+            stress.run(round);
+            List<String> problems = stress.check();
+            System.out.printf("Round %d: %,d operations on %d threads, %d slots, %d cars parked, %s%n",
+                    round, stress.operations.sum(), threads, stress.carPark.getSlotCount(),
+                    stress.carPark.getOccupiedCount(), problems.isEmpty() ? "consistent" : problems.size() + " problems");
+            for (String problem : problems) {
+                System.out.println("  " + problem);
+            }
+            if (!problems.isEmpty()) {
+                failedRounds++;
+            }
+        }
+        if (failedRounds > 0) {
+            System.out.println(failedRounds + " of " + rounds + " rounds found the car park inconsistent");
+            System.exit(1);
+        }
+    }
+
+    private void setUp() {
+        carPark = new CarPark();
+        List<ParkingSlot> newSlots = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            newSlots.add(new ParkingSlot(slotID(i)));
+        }
+        carPark.addParkingSlots(newSlots);
+    }
+
+    // Starts every gate thread together and lets them collide until the round's time is up
+    private void run(int round) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> running = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            long seed = round * 1_000L + t;
+            Thread gate = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                collide(new SplittableRandom(seed), System.nanoTime() + runNanos);
+            }, "stress-gate-" + t);
+            gate.start();
+            running.add(gate);
+        }
+        start.countDown();
+        for (Thread gate : running) {
+            gate.join();
+        }
+    }
+
+    // One gate thread: random operations on the shared slots and registration numbers
+    private void collide(SplittableRandom random, long deadline) {
+        long calls = 0;
+        while ((calls & 255) != 0 || System.nanoTime() < deadline) {
+            String slotID = slotID(random.nextInt(slots));
+            int plate = random.nextInt(plates);
+            int operation = random.nextInt(10);
+            if (operation < 3) {
+                carPark.parkCar(slotID, car(plate));
+            } else if (operation < 5) {
+                carPark.allocateAndPark(car(plate));
+            } else if (operation < 7) {
+                carPark.removeCarByRegistration(plate(plate));
+            } else if (operation < 8) {
+                carPark.removeCarBySlotID(slotID);
+            } else {
+                // Delete the slot if it is free and put a fresh one back under the same ID; the add
+                // may lose to another thread's add, or find the old slot still there, and that is fine
+                carPark.deleteParkingSlot(slotID);
+                carPark.addParkingSlot(new ParkingSlot(slotID));
+            }
+            calls++;
+        }
+        operations.add(calls);
+    }
+
+    // Checks the car park once every gate thread has stopped; returns a line for each broken rule
+    private List<String> check() {
+        List<String> problems = new ArrayList<>();
+        List<ParkingSlot> listed = carPark.getParkingSlots();
+        Map<String, ParkingSlot> parkedIn = new HashMap<>(); // Registration number to the slot holding it
+        int occupied = 0;
+        for (ParkingSlot parkingSlot : listed) {
+            if (carPark.getParkingSlot(parkingSlot.getSlotID()) != parkingSlot) {
+                problems.add("Slot " + parkingSlot.getSlotID() + " is listed but is not the slot stored under its ID");
+            }
+            Car car = parkingSlot.getParkedCar();
+            if (car == null) {
+                continue;
+            }
+            occupied++;
+            ParkingSlot other = parkedIn.put(car.getRegistrationNumber(), parkingSlot);
+            if (other != null) {
+                problems.add("Car " + car.getRegistrationNumber() + " is parked in both " + other.getSlotID()
+                        + " and " + parkingSlot.getSlotID());
+            }
+        }
+
+        // Every parked car is found where it is parked, and no car that is not parked is found
+        int found = 0;
+        for (int i = 0; i < plates; i++) {
+            String plate = plate(i);
+            Map.Entry<Car, ParkingSlot> entry = carPark.findCarByRegistration(plate);
+            ParkingSlot expected = parkedIn.get(plate);
+            if (entry != null) {
+                found++;
+            }
+            if (expected != null && (entry == null || entry.getValue() != expected)) {
+                problems.add("Car " + plate + " is parked in " + expected.getSlotID() + " but the registration index says "
+                        + (entry == null ? "it is not parked" : entry.getValue().getSlotID()));
+            } else if (expected == null && entry != null) {
+                problems.add("Car " + plate + " is found in " + entry.getValue().getSlotID() + " but no listed slot holds it");
+            }
+        }
+
+        // The slot store's counts must agree with the slots themselves
+        if (carPark.getSlotCount() != listed.size()) {
+            problems.add("Slot count is " + carPark.getSlotCount() + " but " + listed.size() + " slots are listed");
+        }
+        if (carPark.getOccupiedCount() != occupied) {
+            problems.add("Occupied count is " + carPark.getOccupiedCount() + " but " + occupied + " listed slots hold a car");
+        }
+        if (found != occupied) {
+            problems.add(found + " registration numbers are found but " + occupied + " listed slots hold a car");
+        }
+
+        // A registration claim left behind by a failed park would stop that car from ever parking again
+        carPark.addParkingSlot(new ParkingSlot(CHECK_SLOT));
+        for (int i = 0; i < plates; i++) {
+            if (!parkedIn.containsKey(plate(i))) {
+                if (carPark.parkCar(CHECK_SLOT, car(i))) {
+                    carPark.removeCarBySlotID(CHECK_SLOT);
+                } else {
+                    problems.add("Car " + plate(i) + " is not parked but cannot be parked either");
+                }
+            }
+        }
+        carPark.deleteParkingSlot(CHECK_SLOT);
+        return problems;
+    }
+
+    private static Car car(int i) {
+        return new Car(plate(i), "Mazda", "Model", "2020");
+    }
+
+    private static String slotID(int i) {
+        return "S" + i;
+    }
+
+    private static String plate(int i) {
+        return "P" + i;
+    }
+}
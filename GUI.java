@@ -12,6 +12,16 @@ import javax.swing.*;
 import javax.swing.border.Border;
 import java.util.Map;
 import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javax.imageio.ImageIO;
+import javax.management.JMException;
 
 
 
@@ -23,15 +33,33 @@ public class GUI implements ActionListener {
     private JTextArea outputTextArea;
     private JScrollPane scrollPane; // For scrolling the text area
     private JPanel actionPanel; // Declare actionPanel as an instance variable
+    private SlotMapPanel slotMap; // Custom-painted map of every parking slot
+    private final ExecutorService worker; // Runs CarPark operations off the Event Dispatch Thread, one at a time and in order
+    private final StringBuilder pendingOutput = new StringBuilder(); // Output waiting to be shown, guarded by itself
+    private boolean outputFlushScheduled; // Whether a flush of pendingOutput is already queued, guarded by pendingOutput
+    private static final int MAX_LISTED_SLOTS = 1000; // Most slots written to the output area by one listing
     
     /**
-     * Constructs a new GUI for the Swinburne Car Park System.
+     * Creates and shows the GUI for the Swinburne Car Park System. The window's buttons and
+     * slot map are only wired to the GUI once it is fully constructed. Call on the Event Dispatch Thread.
      *
-     * @param carPark The CarPark instance to be associated with this GUI.
+     * @param carPark The CarPark instance to be associated with the GUI.
+     * @return The new GUI.
      */
-    public GUI(CarPark carPark) {
+    public static GUI create(CarPark carPark) {
+        GUI gui = new GUI(carPark);
+        gui.prepareGUI(); // Call the prepareGUI method to set up the user interface
+        return gui;
+    }
+
+    // Only sets the fields; create builds the window, so no listener sees a half-built GUI
+    private GUI(CarPark carPark) {
         this.carPark = carPark; // Initialize the CarPark instance
-        prepareGUI(); // Call the prepareGUI method to set up the user interface
+        this.worker = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "gui-worker");
+            thread.setDaemon(true); // Do not keep the application running after the window closes
+            return thread;
+        });
     }
 
     
@@ -69,15 +97,53 @@ public class GUI implements ActionListener {
     
     /**
      * Appends text to the output text area, followed by a newline, and scrolls to the bottom.
+     * This may be called from any thread; text appended in quick succession is shown in one update.
      *
      * @param text The text to be appended.
      */
     // Append text to the text area
     public void appendToOutput(String text) {
-        outputTextArea.append(text + "\n"); // Append the text with a newline
+        synchronized (pendingOutput) {
+            pendingOutput.append(text).append('\n'); // Append the text with a newline
+            if (outputFlushScheduled) {
+                return; // The queued flush will pick this text up too
+            }
+            outputFlushScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::flushOutput);
+    }
+
+    // Moves all pending output into the text area in one go; runs on the Event Dispatch Thread
+    private void flushOutput() {
+        String text;
+        synchronized (pendingOutput) {
+            text = pendingOutput.toString();
+            pendingOutput.setLength(0);
+            outputFlushScheduled = false;
+        }
+        outputTextArea.append(text);
         outputTextArea.setCaretPosition(outputTextArea.getDocument().getLength()); // Scroll to the bottom
     }
 
+    /**
+     * Runs a task on the worker thread and hands its result back to the Event Dispatch Thread,
+     * so slow car park operations never freeze the window.
+     *
+     * @param task     The work to do off the Event Dispatch Thread.
+     * @param whenDone Called on the Event Dispatch Thread with the task's result.
+     */
+    private <T> void runInBackground(Callable<T> task, Consumer<T> whenDone) {
+        worker.execute(() -> {
+            try {
+                T result = task.call();
+                SwingUtilities.invokeLater(() -> whenDone.accept(result));
+            } catch (Exception e) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mainFrame,
+                        "Operation failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+            }
+        });
+    }
+
     
     /**
      * Adds the header panel to the GUI, consisting of a text label and an image.
@@ -95,8 +161,12 @@ public class GUI implements ActionListener {
         headerPanel.add(textLabel); // Add the text label to the header panel
 
         JLabel picLabel = new JLabel(); // Create a label for an image
-        // Load and set an image as an icon, scaled to 200x200 pixels
-        picLabel.setIcon(new ImageIcon(new ImageIcon("carparksymbol.jpg").getImage().getScaledInstance(200, 200, Image.SCALE_SMOOTH)));
+        // Load the image on the worker thread and set it as an icon, scaled to 200x200 pixels, once it is read
+        runInBackground(() -> ImageIO.read(new File("carparksymbol.jpg")), image -> {
+            if (image != null) {
+                picLabel.setIcon(new ImageIcon(image.getScaledInstance(200, 200, Image.SCALE_SMOOTH)));
+            }
+        });
         picLabel.setHorizontalAlignment(SwingConstants.CENTER); // Center-align the image horizontally
         picLabel.setVerticalAlignment(SwingConstants.CENTER); // Center-align the image vertically
         headerPanel.add(picLabel); // Add the image label to the header panel
@@ -106,23 +176,10 @@ public class GUI implements ActionListener {
     
     
     /**
-     * Refreshes the entire panel by removing all components from the main panel,
-     * re-adding action buttons and slot buttons, and updating the GUI.
-     */
-    // A method to refresh the entire panel
-    private void refreshPanel() {
-        mainPanel.removeAll(); // Remove all components from the main panel
-        addMainPanel(); // Re-add action buttons and slot buttons
-        mainFrame.revalidate(); // Revalidate the main frame to reflect the changes
-        mainFrame.repaint(); // Repaint the main frame
-    }
-    
-    
-    /**
-     * Adds the main panel to the GUI, including action buttons on the left and slot buttons on the right.
+     * Adds the main panel to the GUI, including action buttons on the left and the slot map on the right.
      */
     private void addMainPanel() {
-        mainPanel = new JPanel(new GridLayout(1, 2)); // Create a JPanel with a 4x2 grid layout
+        mainPanel = new JPanel(new GridLayout(1, 2)); // Create a JPanel with a 1x2 grid layout
         mainFrame.add(mainPanel, BorderLayout.CENTER); // Add the main panel to the center of the main window
             
         // Create a panel for action buttons (left side)
@@ -135,84 +192,38 @@ public class GUI implements ActionListener {
         addActionButton("Add Parking Spot");// Call a method to add a button
         addActionButton("Exit Application");// Call a method to add a button
         addActionButton("Find Cars by Make");// Call a method to add a button
+        addActionButton("Save Snapshot");// Call a method to add a button
+        addActionButton("Load Snapshot");// Call a method to add a button
+        addActionButton("Import Layout");// Call a method to add a button
+        addActionButton("Show Metrics");// Call a method to add a button
         mainPanel.add(actionPanel); // Add the action panel to the left side of the main panel
     
-        // Create parking slots A001 and B001
-        ParkingSlot parkingSlotA001 = new ParkingSlot("A001");
-        ParkingSlot parkingSlotB001 = new ParkingSlot("B001");
-            
-    
-        // Add the parking slots to the car park
-        carPark.addParkingSlot(parkingSlotA001);
-        carPark.addParkingSlot(parkingSlotB001);
+        // Create the slot map (right side); it repaints itself as slots and cars change
+        slotMap = SlotMapPanel.create(carPark, this::handleSlotButtonClick); // Clicking a slot parks or removes a car there
+        JScrollPane slotScrollPane = new JScrollPane(slotMap, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
+                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        slotScrollPane.setToolTipText("Ctrl + mouse wheel to zoom");
+        mainPanel.add(slotScrollPane); // Add the slot map to the right side of the main panel
+    
+        // Create parking slots A001 and B001 for a first run; a car park restored from its journal keeps its own slots
+        if (carPark.getSlotCount() == 0) {
+            ParkingSlot parkingSlotA001 = new ParkingSlot("A001");
+            ParkingSlot parkingSlotB001 = new ParkingSlot("B001");
             
-        // Create a panel for slot buttons (right side)
-        JPanel slotPanel = new JPanel(new GridLayout(2, 2)); // Create a JPanel for slot buttons with a 2x2 grid layout
-                  
-        // Check if the list of parking slots is not empty after adding
-        if (!carPark.getParkingSlots().isEmpty()) {
-            List<ParkingSlot> parkingSlots = carPark.getParkingSlots();
-    
-            // Iterate through the parking slots and create buttons to represent them
-            for (ParkingSlot parkingSlot : parkingSlots) {
-                JButton slotButton = new JButton("Slot ID: " + parkingSlot.getSlotID());
-   
-                // Set the icon based on whether the slot is occupied or available
-                if (parkingSlot.isOccupied()) {
-                    slotButton.setIcon(new ImageIcon("occupied.jpg"));
-                    slotButton.setBackground(Color.RED); // Set the background color to red for occupied slots
-                } else {
-                    slotButton.setIcon(new ImageIcon("available.png"));
-                    slotButton.setBackground(Color.GREEN); // Set the background color to green for unoccupied slots
-                }
-    
-                // Customize the button appearance if needed
-                slotButton.setBorder(BorderFactory.createEmptyBorder()); // Remove button border
-                slotButton.setContentAreaFilled(false); // Make the button transparent
-                slotButton.setVerticalTextPosition(SwingConstants.BOTTOM); // Set text below the icon
-    
-                // Add an ActionListener to handle button clicks for further actions
-                slotButton.addActionListener(new ActionListener() {
-                        public void actionPerformed(ActionEvent e) {
-                             JButton clickedButton = (JButton) e.getSource(); // Get the clicked button
-                        
-                            // Extract the slot ID from the button's text (assuming the text is in the format "Slot ID: XXX")
-                            String buttonText = clickedButton.getText();
-                            String slotID = buttonText.substring(buttonText.lastIndexOf(" ") + 1);
-                        
-                            ParkingSlot parkingSlot = carPark.getParkingSlot(slotID); // Get the corresponding parking slot
-                        
-                            if (parkingSlot == null) {
-                                // Handle the case where the parking slot does not exist (optional)
-                                System.out.println("Parking slot " + slotID + " does not exist.");
-                                return; // Exit the method
-                            }
-                        
-                            if (parkingSlot.isOccupied()) {
-                                // Slot is occupied, so implement the logic to remove the car
-                                removeCar(); // Call the removeCar method from  GUI class
-                            } else {
-                                // Slot is empty, so implement the logic to park a car
-                                parkCar(); // Call the parkCar method from GUI class
-                            }
-                            // Refresh the panel to display both action buttons and slot buttons
-                            refreshPanel();
-                        }
-                    });
     
-                    mainPanel.add(slotPanel); // Add the slot panel to the right side of the main panel
-                    mainPanel.add(slotButton); // Add the button to the main panel
-                }
-            }
+            // Add the parking slots to the car park
+            carPark.addParkingSlot(parkingSlotA001);
+            carPark.addParkingSlot(parkingSlotB001);
         }
+    }
     
     /**
-     * Handles the click event of a parking slot button. If the slot is occupied, it removes the car;
+     * Handles a click on a parking slot in the slot map. If the slot is occupied, it removes the car;
      * otherwise, it parks a car in the slot.
      *
-     * @param parkingSlot The parking slot associated with the clicked button.
+     * @param parkingSlot The parking slot that was clicked.
      */
-    // New method to handle slot button clicks
+    // New method to handle slot clicks
     private void handleSlotButtonClick(ParkingSlot parkingSlot) {
         if (parkingSlot.isOccupied()) {
             // Slot is occupied, so remove the car
@@ -260,12 +271,17 @@ public class GUI implements ActionListener {
             handleButtonClick(actionCommand);
         } else if ("Find Cars by Make".equals(actionCommand)) { // Handle the "Find Cars by Make" button
             handleButtonClick(actionCommand);
+        } else if ("Save Snapshot".equals(actionCommand)) { // Handle the "Save Snapshot" button
+            handleButtonClick(actionCommand);
+        } else if ("Load Snapshot".equals(actionCommand)) { // Handle the "Load Snapshot" button
+            handleButtonClick(actionCommand);
+        } else if ("Import Layout".equals(actionCommand)) { // Handle the "Import Layout" button
+            handleButtonClick(actionCommand);
+        } else if ("Show Metrics".equals(actionCommand)) { // Handle the "Show Metrics" button
+            handleButtonClick(actionCommand);
         } else if ("Exit Application".equals(actionCommand)) {
             handleButtonClick(actionCommand);
         }
-        
-        // Refresh the panel to display both action buttons and slot buttons
-        refreshPanel();
     }
     
     /**
@@ -305,6 +321,14 @@ public class GUI implements ActionListener {
             removeCar(); // Call the method to Remove a Car
         } else if ("Find Cars by Make".equals(buttonName)) { // Handle the "Find Cars by Make" button
             findCarsByMake(); // Call the method to find cars by make
+        } else if ("Save Snapshot".equals(buttonName)) { // Handle the "Save Snapshot" button
+            saveSnapshot(); // Call the method to save the car park to a file
+        } else if ("Load Snapshot".equals(buttonName)) { // Handle the "Load Snapshot" button
+            loadSnapshot(); // Call the method to load the car park from a file
+        } else if ("Import Layout".equals(buttonName)) { // Handle the "Import Layout" button
+            importLayout(); // Call the method to add slots from a layout file
+        } else if ("Show Metrics".equals(buttonName)) { // Handle the "Show Metrics" button
+            runInBackground(() -> carPark.getMetrics().snapshot().toString(), this::appendToOutput); // Show the live counters and latencies
         } else if ("Exit Application".equals(buttonName)) {
             System.exit(0); // Exit the application
         }
@@ -332,15 +356,19 @@ public class GUI implements ActionListener {
      */
     // New method to remove a car from a slot
     private void removeCarFromSlot(ParkingSlot parkingSlot) {
-        if (parkingSlot.isOccupied()) {
-            Car car = parkingSlot.getParkedCar();
+        Car car = parkingSlot.getParkedCar();
+        if (car != null) {
             String registrationNumber = car.getRegistrationNumber();
 
-            // Call the CarPark method to remove the car by registration number
-            carPark.removeCarByRegistration(registrationNumber);
-
-            // Append a message to the output area
-            appendToOutput("Car with registration number '" + registrationNumber + "' removed from slot " + parkingSlot.getSlotID());
+            // Call the CarPark method to remove the car by registration number, off the Event Dispatch Thread
+            runInBackground(() -> carPark.removeCarByRegistration(registrationNumber), removed -> {
+                // Append a message to the output area; another gate may have taken the car out first
+                if (removed) {
+                    appendToOutput("Car with registration number '" + registrationNumber + "' removed from slot " + parkingSlot.getSlotID());
+                } else {
+                    appendToOutput("Car with registration number '" + registrationNumber + "' is no longer parked.");
+                }
+            });
         }
     }
 
@@ -367,15 +395,16 @@ public class GUI implements ActionListener {
                 // Create a new car object
                 Car newCar = new Car(registrationNumber, make, model, year);
 
-                // Call the CarPark method to park the car in the selected slot
-                if (carPark.parkCar(parkingSlot.getSlotID(), newCar)) {
-
-                    // Append a message to the output area
-                    appendToOutput("Car with registration number '" + registrationNumber + "' parked in slot " + parkingSlot.getSlotID());
-                } else {
-                    // Car could not be parked (slot occupied or duplicate registration)
-                    JOptionPane.showMessageDialog(null, "Car could not be parked in this slot.", "Parking Error", JOptionPane.ERROR_MESSAGE);
-                }
+                // Call the CarPark method to park the car in the selected slot, off the Event Dispatch Thread
+                runInBackground(() -> carPark.parkCar(parkingSlot.getSlotID(), newCar), parked -> {
+                    if (parked) {
+                        // Append a message to the output area
+                        appendToOutput("Car with registration number '" + registrationNumber + "' parked in slot " + parkingSlot.getSlotID());
+                    } else {
+                        // Car could not be parked (slot occupied or duplicate registration)
+                        JOptionPane.showMessageDialog(null, "Car could not be parked in this slot.", "Parking Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
             } else {
                 // User canceled or left a field empty
                 JOptionPane.showMessageDialog(null, "Please fill in all car details.", "Input Error", JOptionPane.ERROR_MESSAGE);
@@ -393,12 +422,14 @@ public class GUI implements ActionListener {
         if (slotID != null && !slotID.isEmpty()) {
             ParkingSlot newParkingSlot = new ParkingSlot(slotID);
 
-            if (carPark.addParkingSlot(newParkingSlot)) {
-                JOptionPane.showMessageDialog(null, "Success: Parking slot added!", "Slot Added Message", JOptionPane.INFORMATION_MESSAGE);
-                appendToOutput("Success: Parking slot added!");
-            } else {
-                JOptionPane.showMessageDialog(null, "Alert: Slot number is not unique", "Slot Adding Error", JOptionPane.ERROR_MESSAGE);
-            }
+            runInBackground(() -> carPark.addParkingSlot(newParkingSlot), added -> {
+                if (added) {
+                    JOptionPane.showMessageDialog(null, "Success: Parking slot added!", "Slot Added Message", JOptionPane.INFORMATION_MESSAGE);
+                    appendToOutput("Success: Parking slot added!");
+                } else {
+                    JOptionPane.showMessageDialog(null, "Alert: Slot number is not unique or is too long", "Slot Adding Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
         } else {
             JOptionPane.showMessageDialog(null, "Alert: Please enter a valid slot ID", "Invalid Slot ID", JOptionPane.ERROR_MESSAGE);
         }
@@ -411,16 +442,19 @@ public class GUI implements ActionListener {
     private void showAllParkings() {
         headerPanel.removeAll();
     
-        // Call the CarPark method to retrieve all parking slots and statuses
-        Map<String, String> parkingSlotsAndStatus = carPark.getAllParkingSlotsAndStatus();
-    
-        // Display the parking slots and statuses
-        appendToOutput("List of All Slots:");
-        for (String slotID : parkingSlotsAndStatus.keySet()) {
-            String status = parkingSlotsAndStatus.get(slotID);
-            String output = "Slot ID: " + slotID + ", Status: " + status;
-            appendToOutput(output);
-        }
+        // Read the parking slots, their statuses and any parked cars in one pass on the worker thread,
+        // and build the text there too, so a large car park does not freeze the window
+        runInBackground(() -> {
+            List<SlotReport> reports = carPark.listAllSlots();
+            StringBuilder listing = new StringBuilder("List of All Slots:");
+            for (int i = 0; i < reports.size() && i < MAX_LISTED_SLOTS; i++) {
+                listing.append('\n').append(reports.get(i));
+            }
+            if (reports.size() > MAX_LISTED_SLOTS) {
+                listing.append("\n... and ").append(reports.size() - MAX_LISTED_SLOTS).append(" more slots");
+            }
+            return listing.toString();
+        }, this::appendToOutput);
     
         headerPanel.revalidate();
         headerPanel.repaint();
@@ -435,58 +469,72 @@ public class GUI implements ActionListener {
         String slotID = JOptionPane.showInputDialog("Enter Slot ID to delete (e.g., V001):");
 
         if (slotID != null && !slotID.isEmpty()) {
-            carPark.deleteParkingSlot(slotID); // Call the method to delete a parking slot
-
-            // Provide feedback to the user
-            JOptionPane.showMessageDialog(null, "Parking slot " + slotID + " deleted.", "Slot Deleted Message", JOptionPane.INFORMATION_MESSAGE);
-            appendToOutput("Parking slot " + slotID + " deleted.");
+            runInBackground(() -> carPark.deleteParkingSlot(slotID), deleted -> { // Call the method to delete a parking slot
+                // Provide feedback to the user
+                if (deleted) {
+                    JOptionPane.showMessageDialog(null, "Parking slot " + slotID + " deleted.", "Slot Deleted Message", JOptionPane.INFORMATION_MESSAGE);
+                    appendToOutput("Parking slot " + slotID + " deleted.");
+                } else {
+                    JOptionPane.showMessageDialog(null, "Parking slot " + slotID + " cannot be deleted as it is occupied or doesn't exist.", "Slot Not Deleted", JOptionPane.ERROR_MESSAGE);
+                }
+            });
         } else {
             JOptionPane.showMessageDialog(null, "Alert: Please enter a valid slot ID", "Invalid Slot ID", JOptionPane.ERROR_MESSAGE);
         }
     }
     
     /**
-     * Parks a car in a specified parking slot.
+     * Parks a car in a specified parking slot, or in the next free slot if no slot ID is given.
      */
     // Method to park a car
-        private void parkCar() {
-        String slotID = JOptionPane.showInputDialog("Enter Slot ID to park the car (e.g., V001)");
-        if (slotID != null && !slotID.isEmpty()) {
+    private void parkCar() {
+        String slotID = JOptionPane.showInputDialog("Enter Slot ID to park the car (e.g., V001), or leave blank to assign a free slot");
+        if (slotID == null) {
+            return; // User canceled
+        }
+        if (!slotID.isEmpty()) {
             // Check if the slot exists
             ParkingSlot parkingSlot = carPark.getParkingSlot(slotID);
-            if (parkingSlot != null) {
-                // Check if the slot is unoccupied
-                if (!parkingSlot.isOccupied()) {
-                    String registrationNumber = JOptionPane.showInputDialog("Enter Car Registration Number:");
-                    String make = JOptionPane.showInputDialog("Enter Car Make:");
-                    String model = JOptionPane.showInputDialog("Enter Car Model:");
-                    String year = JOptionPane.showInputDialog("Enter Car Year:");
-
-                    if (registrationNumber != null && !registrationNumber.isEmpty()
-                            && make != null && !make.isEmpty()
-                            && model != null && !model.isEmpty()
-                            && year != null && !year.isEmpty()) {
-
-                        Car car = new Car(registrationNumber, make, model, year); // Create a new Car object with the updated constructor
-                        boolean parked = carPark.parkCar(slotID, car); // Call the method to park the car
-
-                        if (parked) {
-                            // Provide feedback to the user
-                            JOptionPane.showMessageDialog(null, "Car parked successfully.", "Car Parked", JOptionPane.INFORMATION_MESSAGE);
-                            appendToOutput("Car parked successfully: " + registrationNumber);
-                        } else {
-                            JOptionPane.showMessageDialog(null, "Car could not be parked. Please check if the slot is occupied or the car is already parked.", "Parking Error", JOptionPane.ERROR_MESSAGE);
-                            appendToOutput("Failed to park car: " + registrationNumber);
-                        }
-                    } else {
-                        JOptionPane.showMessageDialog(null, "Please enter valid car information.", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-                    }
-                } else {
-                    JOptionPane.showMessageDialog(null, "Parking slot " + slotID + " is already occupied.", "Occupied Slot", JOptionPane.ERROR_MESSAGE);
-                }
-            } else {
+            if (parkingSlot == null) {
                 JOptionPane.showMessageDialog(null, "Parking slot " + slotID + " does not exist.", "Invalid Slot", JOptionPane.ERROR_MESSAGE);
+                return;
             }
+            // Check if the slot is unoccupied
+            if (parkingSlot.isOccupied()) {
+                JOptionPane.showMessageDialog(null, "Parking slot " + slotID + " is already occupied.", "Occupied Slot", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+
+        String registrationNumber = JOptionPane.showInputDialog("Enter Car Registration Number:");
+        String make = JOptionPane.showInputDialog("Enter Car Make:");
+        String model = JOptionPane.showInputDialog("Enter Car Model:");
+        String year = JOptionPane.showInputDialog("Enter Car Year:");
+
+        if (registrationNumber != null && !registrationNumber.isEmpty()
+                && make != null && !make.isEmpty()
+                && model != null && !model.isEmpty()
+                && year != null && !year.isEmpty()) {
+
+            Car car = new Car(registrationNumber, make, model, year); // Create a new Car object with the updated constructor
+            runInBackground(() -> {
+                if (slotID.isEmpty()) {
+                    ParkingSlot assignedSlot = carPark.allocateAndPark(car); // Let the car park pick the next free slot
+                    return assignedSlot != null ? assignedSlot.getSlotID() : null;
+                }
+                return carPark.parkCar(slotID, car) ? slotID : null; // Call the method to park the car
+            }, parkedSlotID -> {
+                if (parkedSlotID != null) {
+                    // Provide feedback to the user
+                    JOptionPane.showMessageDialog(null, "Car parked successfully in slot " + parkedSlotID + ".", "Car Parked", JOptionPane.INFORMATION_MESSAGE);
+                    appendToOutput("Car parked successfully: " + registrationNumber + " in slot " + parkedSlotID);
+                } else {
+                    JOptionPane.showMessageDialog(null, "Car could not be parked. Please check if the slot is occupied, the car park is full or the car is already parked.", "Parking Error", JOptionPane.ERROR_MESSAGE);
+                    appendToOutput("Failed to park car: " + registrationNumber);
+                }
+            });
+        } else {
+            JOptionPane.showMessageDialog(null, "Please enter valid car information.", "Invalid Input", JOptionPane.ERROR_MESSAGE);
         }
     }
 
@@ -498,31 +546,34 @@ public class GUI implements ActionListener {
         String registrationNumber = JOptionPane.showInputDialog("Enter Car Registration Number:");
     
         if (registrationNumber != null && !registrationNumber.isEmpty()) {
-            // Call the CarPark method to find the car by registration number
-            Map.Entry<Car, ParkingSlot> carEntry = carPark.findCarByRegistration(registrationNumber);
-        
-            if (carEntry != null) {
-                Car foundCar = carEntry.getKey();
-                ParkingSlot parkingSlot = carEntry.getValue();
-            
-                // Display information about the found car and its parking slot
-                String message = "Car Found:\n"
-                    + "Registration Number: " + foundCar.getRegistrationNumber() + "\n"
-                    + "Make: " + foundCar.getMake() + "\n"
-                    + "Model: " + foundCar.getModel() + "\n"
-                    + "Year: " + foundCar.getYear() + "\n"
-                    + "Parked in Slot ID: " + parkingSlot.getSlotID() + "\n";
-            
-                JOptionPane.showMessageDialog(null, message, "Car Found", JOptionPane.INFORMATION_MESSAGE);
-                appendToOutput("Car Found");
-            } else {
-                JOptionPane.showMessageDialog(null, "Car with registration number '" + registrationNumber + "' not found.", "Car Not Found", JOptionPane.ERROR_MESSAGE);
-                appendToOutput("Car with registration number '" + registrationNumber+ "' not found.");
-            }
+            // Call the CarPark method to find the car by registration number, off the Event Dispatch Thread
+            runInBackground(() -> carPark.findCarByRegistration(registrationNumber), carEntry -> showFoundCar(registrationNumber, carEntry));
         } else {
             JOptionPane.showMessageDialog(null, "Alert: Please enter a valid car registration number.", "Invalid Registration Number", JOptionPane.ERROR_MESSAGE);
         }
     }
+
+    // Shows the result of a registration search; runs on the Event Dispatch Thread
+    private void showFoundCar(String registrationNumber, Map.Entry<Car, ParkingSlot> carEntry) {
+        if (carEntry != null) {
+            Car foundCar = carEntry.getKey();
+            ParkingSlot parkingSlot = carEntry.getValue();
+        
+            // Display information about the found car and its parking slot
+            String message = "Car Found:\n"
+                + "Registration Number: " + foundCar.getRegistrationNumber() + "\n"
+                + "Make: " + foundCar.getMake() + "\n"
+                + "Model: " + foundCar.getModel() + "\n"
+                + "Year: " + foundCar.getYear() + "\n"
+                + "Parked in Slot ID: " + parkingSlot.getSlotID() + "\n";
+        
+            JOptionPane.showMessageDialog(null, message, "Car Found", JOptionPane.INFORMATION_MESSAGE);
+            appendToOutput("Car Found");
+        } else {
+            JOptionPane.showMessageDialog(null, "Car with registration number '" + registrationNumber + "' not found.", "Car Not Found", JOptionPane.ERROR_MESSAGE);
+            appendToOutput("Car with registration number '" + registrationNumber+ "' not found.");
+        }
+    }
     
     /**
      * Removes a car from the car park by its registration number.
@@ -532,8 +583,13 @@ public class GUI implements ActionListener {
         String registrationNumber = JOptionPane.showInputDialog("Enter Car Registration Number to remove:");
     
         if (registrationNumber != null && !registrationNumber.isEmpty()) {
-            carPark.removeCarByRegistration(registrationNumber);
-            appendToOutput("Car with registration number '" + registrationNumber+ "' has been removed");
+            runInBackground(() -> carPark.removeCarByRegistration(registrationNumber), removed -> {
+                if (removed) {
+                    appendToOutput("Car with registration number '" + registrationNumber+ "' has been removed");
+                } else {
+                    appendToOutput("Car with registration number '" + registrationNumber+ "' not found.");
+                }
+            });
         } else {
             JOptionPane.showMessageDialog(null, "Alert: Please enter a valid car registration number", "Invalid Registration Number", JOptionPane.ERROR_MESSAGE);
         }
@@ -547,29 +603,116 @@ public class GUI implements ActionListener {
         String make = JOptionPane.showInputDialog("Enter Car Make to find:");
     
         if (make != null && !make.isEmpty()) {
-            // Call the CarPark method to find cars by make
-            carPark.findCarsByMake(make);
-    
-            // Iterate through parking slots and append the slot IDs to the output
-            StringBuilder output = new StringBuilder("Car with Make: " + make + " found in the following slot: ");
-            List<ParkingSlot> parkingSlots = carPark.getParkingSlots();
-            for (ParkingSlot parkingSlot : parkingSlots) {
-                if (parkingSlot.isOccupied()) {
-                    Car parkedCar = parkingSlot.getParkedCar();
-                    if (parkedCar.getMake().equalsIgnoreCase(make)) {
-                        output.append(parkingSlot.getSlotID()).append(", ");
-                    }
+            // Call the CarPark method to find cars by make, and build the text, off the Event Dispatch Thread
+            runInBackground(() -> {
+                List<SlotReport> reports = carPark.findCarsByMake(make);
+    
+                // List the slot IDs found through the make index
+                StringBuilder output = new StringBuilder("Car with Make: " + make + " found in the following slot: ");
+                for (SlotReport report : reports) {
+                    output.append(report.getSlotID()).append(", ");
                 }
-            }
     
-            // Remove the trailing ", " from the output
-            String finalOutput = output.toString().replaceAll(", $", "");
-            appendToOutput(finalOutput);
+                // Remove the trailing ", " from the output
+                output.setLength(reports.isEmpty() ? output.length() : output.length() - 2);
+                for (SlotReport report : reports) {
+                    output.append("\n   ").append(report.getRegistrationNumber()).append(' ').append(report.getModel())
+                            .append(" (").append(report.getYear()).append("), parked for ")
+                            .append(CarPark.formatDuration(report.getDwellMillis()));
+                }
+                return output.toString();
+            }, this::appendToOutput);
         } else {
             JOptionPane.showMessageDialog(null, "Alert: Please enter a valid car make", "Invalid Car Make", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    /**
+     * Saves the whole car park to a snapshot file chosen by the user.
+     */
+    // Method to save a snapshot of the car park
+    private void saveSnapshot() {
+        JFileChooser fileChooser = new JFileChooser(".");
+        if (fileChooser.showSaveDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+            Path file = fileChooser.getSelectedFile().toPath();
+            runInBackground(() -> {
+                try {
+                    carPark.saveSnapshot(file); // Writing the file happens on the worker thread
+                    return null;
+                } catch (IOException e) {
+                    return e.getMessage();
+                }
+            }, error -> {
+                if (error == null) {
+                    appendToOutput("Car park saved to " + file);
+                } else {
+                    JOptionPane.showMessageDialog(null, "Car park could not be saved: " + error, "Save Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        }
+    }
+
+    /**
+     * Loads the slots and parked cars from a snapshot file chosen by the user.
+     */
+    // Method to load a snapshot of the car park
+    private void loadSnapshot() {
+        JFileChooser fileChooser = new JFileChooser(".");
+        if (fileChooser.showOpenDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+            Path file = fileChooser.getSelectedFile().toPath();
+            if (carPark.getSlotCount() > 0) { // Loading replaces the slots and cars the user can see, so ask first
+                int choice = JOptionPane.showConfirmDialog(null, "Loading a snapshot replaces the whole car park: every car is removed and every slot deleted first. Continue?",
+                        "Replace Car Park", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+                if (choice != JOptionPane.OK_OPTION) {
+                    return;
+                }
+            }
+            runInBackground(() -> {
+                try {
+                    carPark.replaceWithSnapshot(file); // Reading the file happens on the worker thread
+                    return null;
+                } catch (IOException | IllegalStateException e) {
+                    return e.getMessage();
+                }
+            }, error -> {
+                if (error == null) {
+                    appendToOutput("Car park loaded from " + file + ": "
+                            + carPark.getSlotCount() + " slots, " + carPark.getOccupiedCount() + " occupied");
+                } else {
+                    JOptionPane.showMessageDialog(null, "Car park could not be loaded: " + error, "Load Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds the slots listed in a layout file chosen by the user, e.g. "L1-A001..L1-A500" per line.
+     */
+    // Method to import a slot layout
+    private void importLayout() {
+        JFileChooser fileChooser = new JFileChooser(".");
+        if (fileChooser.showOpenDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+            Path file = fileChooser.getSelectedFile().toPath();
+            SlotLayoutImporter importer = new SlotLayoutImporter(carPark);
+            runInBackground(() -> {
+                try {
+                    importer.importFile(file); // Reading and adding the slots happens on the worker thread
+                    return null;
+                } catch (IOException e) {
+                    return e.getMessage();
+                }
+            }, error -> {
+                if (error == null) {
+                    appendToOutput("Layout imported: " + importer.getSlotsAdded() + " slots added, "
+                            + (importer.getSlotsRead() - importer.getSlotsAdded()) + " already in use");
+                } else {
+                    appendToOutput("Layout partly imported: " + importer.getSlotsAdded() + " slots added");
+                    JOptionPane.showMessageDialog(null, "Layout could not be imported: " + error, "Import Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        }
+    }
+
     /**
      * The entry point of the application.
      *
@@ -577,7 +720,55 @@ public class GUI implements ActionListener {
      */
     public static void main(String[] args) {
         CarPark carPark = new CarPark(); // Create an instance of the CarPark class
-        GUI newGUI = new GUI(carPark); // Create an instance of the GUI class
-        newGUI.showHomeScreen(); // Call a method to show the home screen
+        AsyncConsoleLog log = new AsyncConsoleLog(CarParkLog.Level.INFO, 8192); // Print messages off the Swing thread
+        carPark.setLog(log);
+        try {
+            carPark.getMetrics().register("main"); // Let JConsole and other JMX tools watch the car park
+        } catch (JMException e) {
+            System.out.println("Car park metrics could not be published over JMX: " + e.getMessage());
+        }
+
+        // Restore the car park from its journal and keep recording every change to it
+        CarParkJournal journal = null;
+        try {
+            journal = CarParkJournal.open(Paths.get("carpark.journal"), carPark);
+        } catch (IOException e) {
+            System.out.println("Car park journal could not be opened, changes will not be saved: " + e.getMessage());
+        }
+
+        // Keep a record of every completed stay; opened after the journal so replayed departures are not recorded
+        SessionHistory history = null;
+        try {
+            history = SessionHistory.open(Paths.get("history"), carPark);
+        } catch (IOException e) {
+            System.out.println("Session history could not be opened, stays will not be recorded: " + e.getMessage());
+        }
+
+        // One hook, so the journal and history write out what they have queued before the log prints its last messages
+        CarParkJournal openJournal = journal;
+        SessionHistory openHistory = history;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (openJournal != null) {
+                try {
+                    openJournal.close();
+                } catch (IOException e) {
+                    log.write(CarParkLog.Level.ERROR, "Car park journal could not be closed: " + e.getMessage());
+                }
+            }
+            if (openHistory != null) {
+                try {
+                    openHistory.close();
+                } catch (IOException e) {
+                    log.write(CarParkLog.Level.ERROR, "Session history could not be closed: " + e.getMessage());
+                }
+            }
+            log.close(); // Print anything still buffered on exit
+        }));
+
+        // Build and show the window on the Event Dispatch Thread, as Swing requires
+        SwingUtilities.invokeLater(() -> {
+            GUI newGUI = GUI.create(carPark); // Create and show an instance of the GUI class
+            newGUI.showHomeScreen(); // Call a method to show the home screen
+        });
     }
 }
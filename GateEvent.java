@@ -0,0 +1,157 @@
+/**
+* This class represents one event from an entry or exit gate camera: a car
+* arriving, optionally at a given slot, or a car leaving. Events are applied to
+* a CarPark in batches with CarPark.applyBatch or through a GateEventPipeline.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+public class GateEvent {
+
+    /**
+     * The kind of gate event.
+     */
+    public enum Type {
+        ENTRY, // A car arrives and is parked
+        EXIT // A car leaves
+    }
+
+    /**
+     * The outcome of applying a gate event to a car park.
+     */
+    public enum Result {
+        PARKED, // The car was parked
+        LEFT, // The car left its slot
+        ALREADY_PARKED, // An entry for a car that is already parked
+        NOT_PARKED, // An exit for a car that is not parked
+        SLOT_UNAVAILABLE, // The requested slot does not exist or is occupied
+        FULL, // No free slot for an entry without a slot ID
+        INVALID // The event is missing its car or registration number
+    }
+
+    private final Type type;
+    private final Car car; // The arriving car, for an entry
+    private final String registrationNumber;
+    private final String slotID; // The requested slot for an entry, or null to pick one
+    private final long timeMillis; // When the camera saw the car, epoch milliseconds
+    private volatile String assignedSlotID; // The slot an entry was parked in, set when it is applied
+
+    private GateEvent(Type type, Car car, String registrationNumber, String slotID, long timeMillis) {
+        this.type = type;
+        this.car = car;
+        this.registrationNumber = registrationNumber;
+        this.slotID = slotID;
+        this.timeMillis = timeMillis;
+    }
+
+    /**
+     * Creates an entry event for a car arriving now.
+     *
+     * @param car    The arriving car.
+     * @param slotID The slot to park in, or null to park in the next free slot.
+     * @return The entry event.
+     */
+    public static GateEvent entry(Car car, String slotID) {
+        return entry(car, slotID, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates an entry event for a car seen at a given time; the car's parking time is the time it was seen.
+     *
+     * @param car        The arriving car.
+     * @param slotID     The slot to park in, or null to park in the next free slot.
+     * @param timeMillis When the car was seen, in epoch milliseconds.
+     * @return The entry event.
+     */
+    public static GateEvent entry(Car car, String slotID, long timeMillis) {
+        return new GateEvent(Type.ENTRY, car, car != null ? car.getRegistrationNumber() : null, slotID, timeMillis);
+    }
+
+    /**
+     * Creates an exit event for a car leaving now.
+     *
+     * @param registrationNumber The registration number of the leaving car.
+     * @return The exit event.
+     */
+    public static GateEvent exit(String registrationNumber) {
+        return exit(registrationNumber, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates an exit event for a car seen leaving at a given time.
+     *
+     * @param registrationNumber The registration number of the leaving car.
+     * @param timeMillis         When the car was seen, in epoch milliseconds.
+     * @return The exit event.
+     */
+    public static GateEvent exit(String registrationNumber, long timeMillis) {
+        return new GateEvent(Type.EXIT, null, registrationNumber, null, timeMillis);
+    }
+
+    /**
+     * Gets the kind of event.
+     *
+     * @return ENTRY or EXIT.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the arriving car.
+     *
+     * @return The car for an entry, or null for an exit.
+     */
+    public Car getCar() {
+        return car;
+    }
+
+    /**
+     * Gets the registration number of the car.
+     *
+     * @return The registration number.
+     */
+    public String getRegistrationNumber() {
+        return registrationNumber;
+    }
+
+    /**
+     * Gets the requested slot.
+     *
+     * @return The slot ID for an entry into a given slot, or null.
+     */
+    public String getSlotID() {
+        return slotID;
+    }
+
+    /**
+     * Gets when the car was seen.
+     *
+     * @return The event time in epoch milliseconds.
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Gets the slot this entry was parked in. Unlike looking the car up afterwards, this
+     * is still the right slot if the car has left again by the time it is read.
+     *
+     * @return The slot ID once the entry has been applied with the result PARKED, otherwise null.
+     */
+    public String getAssignedSlotID() {
+        return assignedSlotID;
+    }
+
+    // Set by CarPark.applyBatch when the entry parks its car
+    void assignSlot(String slotID) {
+        assignedSlotID = slotID;
+    }
+
+    @Override
+    public String toString() {
+        return "GateEvent{" + type + ", registrationNumber='" + registrationNumber + "'"
+                + (slotID != null ? ", slotID='" + slotID + "'" : "") + "}";
+    }
+}
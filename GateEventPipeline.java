@@ -0,0 +1,175 @@
+/**
+* This class feeds gate camera events into a CarPark through a bounded queue.
+* A single worker thread takes whatever has queued up and applies it as one
+* batch, so bursts at shift change are absorbed in groups, and a full queue
+* makes the cameras wait rather than letting the backlog grow without limit.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class GateEventPipeline implements Closeable {
+    private final CarPark carPark;
+    private final BlockingQueue<Pending> queue; // Events waiting to be applied, bounded for backpressure
+    private final int maxBatch; // Most events applied in one batch
+    private final Thread worker; // Applies queued events in batches, in arrival order
+    private final ReadWriteLock closing; // Submitters share the read lock while queueing; close takes the write lock
+    private volatile boolean running; // Only set false with the write lock held, so no event is queued after it
+
+    // An event waiting to be applied, with the future its result is delivered through
+    private static final class Pending {
+        final GateEvent event;
+        final CompletableFuture<GateEvent.Result> result;
+
+        Pending(GateEvent event) {
+            this.event = event;
+            this.result = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Creates a pipeline and starts its worker thread.
+     *
+     * @param carPark  The CarPark to apply events to.
+     * @param capacity The most events that may wait in the queue before submitters are held up.
+     * @param maxBatch The most events applied in one batch.
+     */
+    public GateEventPipeline(CarPark carPark, int capacity, int maxBatch) {
+        this.carPark = carPark;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.closing = new ReentrantReadWriteLock();
+        running = true;
+        worker = new Thread(this::applyLoop, "gate-event-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues an event, waiting for room if the queue is full.
+     *
+     * @param event The event to apply.
+     * @return A future completed with the event's result once it has been applied.
+     * @throws InterruptedException If the caller is interrupted while waiting for room.
+     */
+    public CompletableFuture<GateEvent.Result> submit(GateEvent event) throws InterruptedException {
+        closing.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Gate event pipeline is closed");
+            }
+            Pending pending = new Pending(event);
+            queue.put(pending); // Blocks while the queue is full: this is the backpressure on the cameras
+            return pending.result;
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queues an event if there is room within the given time.
+     *
+     * @param event   The event to apply.
+     * @param timeout How long to wait for room.
+     * @param unit    The unit of the timeout.
+     * @return A future completed with the event's result, or null if the queue stayed full.
+     * @throws InterruptedException If the caller is interrupted while waiting for room.
+     */
+    public CompletableFuture<GateEvent.Result> trySubmit(GateEvent event, long timeout, TimeUnit unit) throws InterruptedException {
+        closing.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Gate event pipeline is closed");
+            }
+            Pending pending = new Pending(event);
+            return queue.offer(pending, timeout, unit) ? pending.result : null;
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of events waiting to be applied.
+     *
+     * @return The queue length.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting events, applies every event already queued and stops the worker.
+     * Submitters already waiting for room are let in first, so every future handed out
+     * is completed.
+     */
+    @Override
+    public void close() {
+        // The worker keeps draining while this waits, so submitters blocked on a full queue get in and finish
+        closing.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closing.writeLock().unlock();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Nothing can be queued any more, but if the join was interrupted the worker may not have finished
+        List<Pending> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        if (!leftovers.isEmpty()) {
+            apply(leftovers, new ArrayList<>(leftovers.size()));
+        }
+    }
+
+    // Worker thread: waits for an event, then applies it together with everything queued behind it
+    private void applyLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        List<GateEvent> events = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                apply(batch, events);
+                batch.clear();
+                events.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Applies a batch as one call to the car park and completes each event's future
+    private void apply(List<Pending> batch, List<GateEvent> events) {
+        for (Pending pending : batch) {
+            events.add(pending.event);
+        }
+        try {
+            GateEvent.Result[] results = carPark.applyBatch(events);
+            for (int i = 0; i < results.length; i++) {
+                batch.get(i).result.complete(results[i]);
+            }
+        } catch (RuntimeException e) {
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e); // Let the submitters see what went wrong
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+* This class load-tests a running GateServer on this machine. Each simulated gate
+* parks a car, looks it up and sends it away again, as fast as the server answers,
+* and the request rate and latency percentiles are printed at the end. Run it with:
+*   java GateServer slots=A00001..A20000
+*   java GateLoadGenerator [url=http://localhost:8080] [gates=32] [seconds=10]
+* The server needs at least one free slot per gate.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+public class GateLoadGenerator {
+    private final String baseUrl;
+    private final HttpClient client;
+    private final LatencyHistogram parkLatency;
+    private final LatencyHistogram lookupLatency;
+    private final LatencyHistogram unparkLatency;
+    private final LongAdder requests; // Requests answered
+    private final LongAdder failures; // Requests that failed or got an unexpected status
+
+    /**
+     * Creates a load generator for a gate server.
+     *
+     * @param baseUrl The server's address, e.g. http://localhost:8080.
+     */
+    public GateLoadGenerator(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+        this.parkLatency = new LatencyHistogram();
+        this.lookupLatency = new LatencyHistogram();
+        this.unparkLatency = new LatencyHistogram();
+        this.requests = new LongAdder();
+        this.failures = new LongAdder();
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args Optional settings: url=..., gates=... (concurrent gates) and seconds=... to run for.
+     * @throws InterruptedException If interrupted while waiting for the gates.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String url = "http://localhost:8080";
+        int gates = 32;
+        double seconds = 10;
+        for (String arg : args) {
+            if (arg.startsWith("url=")) {
+                url = arg.substring(4);
+            } else if (arg.startsWith("gates=")) {
+                gates = Integer.parseInt(arg.substring(6));
+            } else if (arg.startsWith("seconds=")) {
+                seconds = Double.parseDouble(arg.substring(8));
+            }
+        }
+        GateLoadGenerator generator = new GateLoadGenerator(url);
+        generator.run(gates, (long) (seconds * 1000));
+    }
+
+    /**
+     * Runs gates against the server for a while and prints the results.
+     *
+     * @param gates          The number of gates sending requests at once.
+     * @param durationMillis How long to run for.
+     * @throws InterruptedException If interrupted while waiting for the gates.
+     */
+    public void run(int gates, long durationMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + durationMillis * 1_000_000L;
+        List<Thread> threads = new ArrayList<>(gates);
+        for (int gate = 0; gate < gates; gate++) {
+            int gateNumber = gate;
+            Thread thread = new Thread(() -> runGate(gateNumber, deadline), "load-gate-" + gate);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d gates, %.1f s: %,d requests, %,.0f requests/s, %,d failed%n",
+                gates, elapsedSeconds, requests.sum(), requests.sum() / elapsedSeconds, failures.sum());
+        System.out.println("Park latency ns:   " + parkLatency.summarize());
+        System.out.println("Lookup latency ns: " + lookupLatency.summarize());
+        System.out.println("Unpark latency ns: " + unparkLatency.summarize());
+    }
+
+    // One gate: park, look up and unpark its own cars until the deadline
+    private void runGate(int gate, long deadline) {
+        long car = 0;
+        while (System.nanoTime() < deadline) {
+            String plate = "LOAD-" + gate + "-" + car++;
+            send("POST", "/park?plate=" + plate + "&make=Toyota&model=Corolla&year=2020", 200, parkLatency);
+            send("GET", "/cars/" + plate, 200, lookupLatency);
+            send("POST", "/unpark?plate=" + plate, 200, unparkLatency);
+        }
+    }
+
+    private void send(String method, String path, int expectedStatus, LatencyHistogram latency) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            latency.record(System.nanoTime() - start);
+            requests.increment();
+            if (response.statusCode() != expectedStatus) {
+                failures.increment();
+            }
+        } catch (IOException e) {
+            failures.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/**
+* This class runs the car park without a window, as a gate service with a local
+* HTTP API that answers in JSON. Gate requests are fed through a GateEventPipeline,
+* so bursts of parks and departures are applied in batches. Run it with:
+*   java GateServer [port=8080] [slots=A001..A500] [layout=site.txt] [journal=carpark.journal]
+* Endpoints:
+*   POST /park?plate=..&make=..&model=..&year=..[&slot=..]  park a car, in a given or the next free slot
+*   POST /unpark?plate=..                                    a car leaves
+*   GET  /cars/{plate}                                       find a car by registration number
+*   GET  /cars?make=..                                       find cars by make
+*   GET  /occupancy                                          counts now, per zone and over the last hour
+*   GET  /metrics                                            live counters and latencies
+*   GET  /events                                             a stream of every change, as server-sent events
+* Parameters may be sent in the query string or as a form-encoded body.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+public class GateServer {
+    private static final int QUEUE_CAPACITY = 16_384; // Gate events that may wait before requests are held up
+    private static final int MAX_BATCH = 1024; // Most gate events applied in one batch
+
+    private final CarPark carPark;
+    private final GateEventPipeline pipeline;
+    private final OccupancyAnalytics analytics; // Running occupancy figures for /occupancy
+    private final HttpServer server;
+    private final ExecutorService executor; // One thread per request
+
+    /**
+     * Creates a gate server for a car park, listening on the loopback address.
+     *
+     * @param carPark The CarPark to serve.
+     * @param port    The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public GateServer(CarPark carPark, int port) throws IOException {
+        this.carPark = carPark;
+        this.pipeline = new GateEventPipeline(carPark, QUEUE_CAPACITY, MAX_BATCH);
+        this.analytics = new OccupancyAnalytics(carPark);
+        analytics.start(); // Count the slots and cars already there before the server takes requests
+        // The JDK server writes headers and body separately; without TCP_NODELAY each small
+        // response waits on the client's delayed ACK, adding about 40 ms to every request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/park", exchange -> handle(exchange, "POST", this::park));
+        server.createContext("/unpark", exchange -> handle(exchange, "POST", this::unpark));
+        server.createContext("/cars", exchange -> handle(exchange, "GET", this::findCars));
+        server.createContext("/occupancy", exchange -> handle(exchange, "GET", this::occupancy));
+        server.createContext("/metrics", exchange -> handle(exchange, "GET", this::metrics));
+        server.createContext("/events", this::streamEvents);
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops answering requests, applies every gate event already queued, completes any event
+     * streams and stops the request threads.
+     */
+    public void stop() {
+        server.stop(1);
+        pipeline.close();
+        carPark.closeEventPublisher(); // Completes any event streams once the queued events have been published
+        analytics.close();
+        executor.shutdown();
+    }
+
+    /**
+     * Starts a gate server from the command line.
+     *
+     * @param args Optional settings: port=..., slots=... (slot IDs and ranges, as in a layout file line),
+     *             layout=... (a layout file) and journal=... (a journal file to restore and record to).
+     * @throws IOException If the journal or layout cannot be read or the port cannot be opened.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        CarPark carPark = new CarPark();
+        AsyncConsoleLog log = new AsyncConsoleLog(CarParkLog.Level.WARN, 8192); // Only refusals; parks are counted in the metrics
+        carPark.setLog(log);
+        Path journalFile = null;
+        List<String> layouts = new ArrayList<>(); // layout= and slots= settings, imported in the order given
+        for (String arg : args) {
+            if (arg.startsWith("port=")) {
+                port = Integer.parseInt(arg.substring(5));
+            } else if (arg.startsWith("journal=")) {
+                journalFile = Paths.get(arg.substring(8));
+            } else if (arg.startsWith("layout=") || arg.startsWith("slots=")) {
+                layouts.add(arg);
+            }
+        }
+
+        // Restore the journal first and record from then on, so the imported slots are journaled
+        // too, whatever order the settings were given in
+        CarParkJournal journal = null;
+        if (journalFile != null) {
+            journal = CarParkJournal.open(journalFile, carPark);
+        }
+        try {
+            for (String layout : layouts) {
+                if (layout.startsWith("layout=")) {
+                    new SlotLayoutImporter(carPark).importFile(Paths.get(layout.substring(7)));
+                } else {
+                    new SlotLayoutImporter(carPark).importLayout(new StringReader(layout.substring(6)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (journal != null) {
+                journal.close(); // Keep the slots that were imported before the failure
+            }
+            throw e;
+        }
+
+        GateServer gateServer = new GateServer(carPark, port);
+        gateServer.start();
+        CarParkJournal openJournal = journal;
+        // One hook, so the steps run in order: the gates stop and the pipeline applies what it
+        // has queued, then the journal writes out those changes, then the log prints the last messages
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            gateServer.stop();
+            if (openJournal != null) {
+                try {
+                    openJournal.close();
+                } catch (IOException e) {
+                    log.write(CarParkLog.Level.ERROR, "Car park journal could not be closed: " + e.getMessage());
+                }
+            }
+            log.close();
+        }));
+        System.out.println("Gate server listening on http://localhost:" + gateServer.getPort()
+                + " with " + carPark.getSlotCount() + " slots");
+    }
+
+    // A request handler: takes the request's parameters and path, and returns the status and JSON body
+    private interface Endpoint {
+        Response serve(Map<String, String> parameters, String path) throws InterruptedException;
+    }
+
+    private static final class Response {
+        final int status;
+        final String json;
+
+        Response(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+    }
+
+    // POST /park: park a car in the slot given, or the next free one
+    private Response park(Map<String, String> parameters, String path) throws InterruptedException {
+        String plate = parameters.get("plate");
+        if (plate == null || plate.isEmpty()) {
+            return error(400, "plate is required");
+        }
+        Car car = new Car(plate, parameters.getOrDefault("make", ""), parameters.getOrDefault("model", ""),
+                parameters.getOrDefault("year", ""));
+        GateEvent entry = GateEvent.entry(car, parameters.get("slot"));
+        GateEvent.Result result = await(entry);
+        if (result != GateEvent.Result.PARKED) {
+            return new Response(result == GateEvent.Result.INVALID ? 400 : 409, "{\"result\":" + quote(result.name()) + "}");
+        }
+        // The slot the pipeline parked this entry in; the car may already have left again
+        return new Response(200, "{\"result\":\"PARKED\",\"slotID\":" + quote(entry.getAssignedSlotID())
+                + ",\"parkedAt\":" + car.getParkedAtMillis() + "}");
+    }
+
+    // POST /unpark: a car leaves
+    private Response unpark(Map<String, String> parameters, String path) throws InterruptedException {
+        String plate = parameters.get("plate");
+        if (plate == null || plate.isEmpty()) {
+            return error(400, "plate is required");
+        }
+        GateEvent.Result result = await(GateEvent.exit(plate));
+        return new Response(result == GateEvent.Result.LEFT ? 200 : 404, "{\"result\":" + quote(result.name()) + "}");
+    }
+
+    // GET /cars/{plate} or GET /cars?make=..
+    private Response findCars(Map<String, String> parameters, String path) {
+        String plate = path.startsWith("/cars/") ? path.substring("/cars/".length()) : "";
+        if (!plate.isEmpty()) {
+            Map.Entry<Car, ParkingSlot> found = carPark.findCarByRegistration(plate);
+            if (found == null) {
+                return error(404, "car " + plate + " is not parked");
+            }
+            return new Response(200, toJson(new SlotReport(found.getValue().getSlotID(), found.getKey(), System.currentTimeMillis())));
+        }
+        String make = parameters.get("make");
+        if (make == null || make.isEmpty()) {
+            return error(400, "a plate in the path or a make parameter is required");
+        }
+        List<SlotReport> reports = carPark.findCarsByMake(make);
+        StringBuilder json = new StringBuilder(64 + reports.size() * 160).append('[');
+        for (int i = 0; i < reports.size(); i++) {
+            json.append(i > 0 ? "," : "").append(toJson(reports.get(i)));
+        }
+        return new Response(200, json.append(']').toString());
+    }
+
+    // GET /occupancy: counts kept by the car park and its analytics, no scanning
+    private Response occupancy(Map<String, String> parameters, String path) {
+        OccupancyAnalytics.Window lastHour = analytics.window(60 * 60 * 1000);
+        StringBuilder zones = new StringBuilder();
+        for (Map.Entry<String, Double> zone : analytics.getOccupancyByZone().entrySet()) {
+            zones.append(zones.length() == 0 ? "" : ",").append(quote(zone.getKey()))
+                    .append(":{\"occupied\":").append(analytics.getOccupiedCount(zone.getKey()))
+                    .append(",\"free\":").append(analytics.getFreeCount(zone.getKey()))
+                    .append(",\"occupancy\":").append(zone.getValue()).append('}');
+        }
+        return new Response(200, "{\"slots\":" + carPark.getSlotCount() + ",\"occupied\":" + carPark.getOccupiedCount()
+                + ",\"free\":" + carPark.getFreeCount() + ",\"peakToday\":" + analytics.getPeakToday()
+                + ",\"zones\":{" + zones + "}"
+                + ",\"lastHour\":{\"arrivals\":" + lastHour.getArrivals() + ",\"departures\":" + lastHour.getDepartures()
+                + ",\"arrivalsPerHour\":" + lastHour.getArrivalsPerHour() + ",\"departuresPerHour\":" + lastHour.getDeparturesPerHour()
+                + ",\"averageDwellMillis\":" + lastHour.getAverageDwellMillis() + ",\"averageOccupied\":" + lastHour.getAverageOccupied()
+                + ",\"peakOccupied\":" + lastHour.getPeakOccupied() + "}}");
+    }
+
+    // GET /metrics: park and departure counts, rates and latencies
+    private Response metrics(Map<String, String> parameters, String path) {
+        CarParkMetrics.Snapshot metrics = carPark.getMetrics().snapshot();
+        return new Response(200, "{\"parks\":" + metrics.getParks() + ",\"failedParks\":" + metrics.getFailedParks()
+                + ",\"departures\":" + metrics.getDepartures() + ",\"failedDepartures\":" + metrics.getFailedDepartures()
+                + ",\"lookups\":" + metrics.getLookups()
+                + ",\"parksPerSecond\":" + metrics.getParksPerSecond() + ",\"departuresPerSecond\":" + metrics.getDeparturesPerSecond()
+                + ",\"parkLatencyNanos\":" + toJson(metrics.getParkLatency())
+                + ",\"departureLatencyNanos\":" + toJson(metrics.getDepartureLatency())
+                + ",\"lookupLatencyNanos\":" + toJson(metrics.getLookupLatency()) + "}");
+    }
+
+    // GET /events: every change to the car park as server-sent events, for signs and dashboards.
+    // The stream is written from the event publisher's thread, so no request thread waits on it,
+    // and a client that reads too slowly misses events rather than holding up the gates
+    private void streamEvents(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, error(405, exchange.getRequestMethod() + " is not allowed here, use GET"));
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // Chunked: the stream lasts until the client goes away
+        carPark.subscribe(new EventStream(exchange));
+    }
+
+    // Writes each event to one client's stream; closes the exchange when the client goes away
+    private static final class EventStream implements Flow.Subscriber<CarParkEvent> {
+        private final HttpExchange exchange;
+        private final OutputStream out;
+        private Flow.Subscription subscription;
+
+        EventStream(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE); // The publisher's buffer bounds what waits for this client
+        }
+
+        @Override
+        public void onNext(CarParkEvent event) {
+            Car car = event.getCar();
+            String message = "id: " + event.getSequence() + "\nevent: " + event.getType()
+                    + "\ndata: {\"sequence\":" + event.getSequence() + ",\"type\":" + quote(event.getType().name())
+                    + ",\"slotID\":" + quote(event.getSlotID()) + ",\"plate\":" + quote(car != null ? car.getRegistrationNumber() : null)
+                    + ",\"time\":" + event.getTimeMillis() + "}\n\n";
+            try {
+                out.write(message.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                subscription.cancel(); // The client has gone
+                exchange.close();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            exchange.close();
+        }
+
+        @Override
+        public void onComplete() {
+            exchange.close();
+        }
+    }
+
+    // Submits a gate event to the pipeline and waits for it to be applied with its batch
+    private GateEvent.Result await(GateEvent event) throws InterruptedException {
+        try {
+            return pipeline.submit(event).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Gate event could not be applied", e.getCause());
+        }
+    }
+
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        Response response;
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                response = error(405, exchange.getRequestMethod() + " is not allowed here, use " + method);
+            } else {
+                response = endpoint.serve(readParameters(exchange), exchange.getRequestURI().getPath());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response = error(503, "server is shutting down");
+        } catch (RuntimeException e) {
+            response = error(500, String.valueOf(e.getMessage()));
+        }
+        send(exchange, response);
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] body = response.json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Reads the query string and, for a form post, the body, into one map of parameters
+    private static Map<String, String> readParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), parameters);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes(); // Always drain the body so the connection can be reused
+            if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                parseForm(new String(body, StandardCharsets.UTF_8), parameters);
+            }
+        }
+        return parameters;
+    }
+
+    private static void parseForm(String form, Map<String, String> parameters) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Uses a virtual thread per request where the JDK has them, otherwise a pool of platform threads
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(16, 8 * Runtime.getRuntime().availableProcessors()), task -> {
+                Thread thread = new Thread(task, "gate-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, "{\"error\":" + quote(message) + "}");
+    }
+
+    private static String toJson(SlotReport report) {
+        return "{\"slotID\":" + quote(report.getSlotID()) + ",\"plate\":" + quote(report.getRegistrationNumber())
+                + ",\"make\":" + quote(report.getMake()) + ",\"model\":" + quote(report.getModel())
+                + ",\"year\":" + quote(report.getYear()) + ",\"parkedAt\":" + report.getParkedAtMillis()
+                + ",\"dwellMillis\":" + report.getDwellMillis() + "}";
+    }
+
+    private static String toJson(LatencyHistogram.Summary summary) {
+        return "{\"count\":" + summary.getCount() + ",\"mean\":" + Math.round(summary.getMean()) + ",\"p50\":" + summary.getP50()
+                + ",\"p90\":" + summary.getP90() + ",\"p99\":" + summary.getP99() + ",\"p999\":" + summary.getP999()
+                + ",\"max\":" + summary.getMax() + "}";
+    }
+
+    // Writes a string as a JSON string literal, or null
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,208 @@
+/**
+* This class counts operation latencies in log-linear buckets, in the style of an
+* HDR histogram: every power of two is split into 16 buckets, so any recorded
+* value is reported to within about 6%. Recording is lock-free and allocation-free,
+* cheap enough to do on every park and lookup.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4; // 16 buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts; // Number of values recorded in each bucket
+    private final LongAdder total; // Sum of every recorded value, for the mean
+    private final AtomicLong max; // Largest value recorded
+
+    /**
+     * A summary of the histogram at one moment.
+     */
+    public static final class Summary {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Summary(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of values recorded.
+         *
+         * @return The count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the mean of the recorded values.
+         *
+         * @return The mean.
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * Gets the median.
+         *
+         * @return The 50th percentile.
+         */
+        public long getP50() {
+            return p50;
+        }
+
+        /**
+         * Gets the 90th percentile.
+         *
+         * @return The 90th percentile.
+         */
+        public long getP90() {
+            return p90;
+        }
+
+        /**
+         * Gets the 99th percentile.
+         *
+         * @return The 99th percentile.
+         */
+        public long getP99() {
+            return p99;
+        }
+
+        /**
+         * Gets the 99.9th percentile.
+         *
+         * @return The 99.9th percentile.
+         */
+        public long getP999() {
+            return p999;
+        }
+
+        /**
+         * Gets the largest recorded value.
+         *
+         * @return The maximum.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + Math.round(mean) + ", p50=" + p50 + ", p90=" + p90
+                    + ", p99=" + p99 + ", p99.9=" + p999 + ", max=" + max;
+        }
+    }
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        total = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param value The value, normally a latency in nanoseconds; negative values count as 0.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(value));
+        total.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Summarises the values recorded so far. Values recorded while the summary is
+     * being built may or may not be included.
+     *
+     * @return The summary.
+     */
+    public Summary summarize() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return new Summary(0, 0, 0, 0, 0, 0, 0);
+        }
+        long maximum = max.get();
+        return new Summary(count, (double) total.sum() / count,
+                Math.min(maximum, percentile(snapshot, count, 0.50)),
+                Math.min(maximum, percentile(snapshot, count, 0.90)),
+                Math.min(maximum, percentile(snapshot, count, 0.99)),
+                Math.min(maximum, percentile(snapshot, count, 0.999)),
+                maximum);
+    }
+
+    /**
+     * Clears every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    // Values below 16 get a bucket each; above that, the top set bit picks the power of two
+    // and the next four bits pick one of its 16 buckets
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // The largest value that falls in a bucket
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static long percentile(long[] snapshot, long count, double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueIn(i);
+            }
+        }
+        return highestValueIn(snapshot.length - 1);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+* This class is an optional JavaFX view of a CarPark. It keeps observable
+* collections in step with the car park so JavaFX controls can bind to them,
+* while the CarPark itself stays free of any JavaFX dependency.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ObservableCarPark implements CarParkListener {
+    private final CarPark carPark;
+    private final ObservableMap<String, ParkingSlot> parkingSlots; // ObservableMap of parking slots by ID
+    private final ObservableMap<String, Car> parkedCars; // ObservableMap of parked cars by slot ID
+
+    /**
+     * Creates an observable view of the given car park and starts listening for its changes.
+     *
+     * @param carPark The CarPark to observe.
+     * @return The view, already listening.
+     */
+    public static ObservableCarPark create(CarPark carPark) {
+        ObservableCarPark view = new ObservableCarPark(carPark);
+        carPark.addListener(view); // Register first so no change is missed while copying the current state
+        view.copyCurrentState();
+        return view;
+    }
+
+    // Only sets the fields; create registers the view once it is fully built
+    private ObservableCarPark(CarPark carPark) {
+        this.carPark = carPark;
+        this.parkingSlots = FXCollections.observableHashMap();
+        this.parkedCars = FXCollections.observableHashMap();
+    }
+
+    private void copyCurrentState() {
+        for (ParkingSlot parkingSlot : carPark.getParkingSlots()) {
+            parkingSlots.put(parkingSlot.getSlotID(), parkingSlot);
+            Car car = parkingSlot.getParkedCar();
+            if (car != null) {
+                parkedCars.put(parkingSlot.getSlotID(), car);
+            }
+        }
+    }
+
+    /**
+     * Gets the observable map of parking slots, keyed by slot ID.
+     *
+     * @return The observable parking slots.
+     */
+    public ObservableMap<String, ParkingSlot> getParkingSlots() {
+        return parkingSlots;
+    }
+
+    /**
+     * Gets the observable map of parked cars, keyed by the slot ID they are parked in.
+     *
+     * @return The observable parked cars.
+     */
+    public ObservableMap<String, Car> getParkedCars() {
+        return parkedCars;
+    }
+
+    /**
+     * Stops listening to the car park. The observable collections keep their last contents.
+     */
+    public void dispose() {
+        carPark.removeListener(this);
+    }
+
+    @Override
+    public void slotAdded(ParkingSlot parkingSlot) {
+        runOnFxThread(() -> parkingSlots.put(parkingSlot.getSlotID(), parkingSlot));
+    }
+
+    @Override
+    public void slotsAdded(List<ParkingSlot> added) {
+        Map<String, ParkingSlot> byID = new HashMap<>(added.size() * 2);
+        for (ParkingSlot parkingSlot : added) {
+            byID.put(parkingSlot.getSlotID(), parkingSlot);
+        }
+        runOnFxThread(() -> parkingSlots.putAll(byID)); // One hop to the FX thread for the whole batch
+    }
+
+    @Override
+    public void slotRemoved(ParkingSlot parkingSlot) {
+        runOnFxThread(() -> parkingSlots.remove(parkingSlot.getSlotID()));
+    }
+
+    @Override
+    public void carParked(ParkingSlot parkingSlot, Car car) {
+        runOnFxThread(() -> parkedCars.put(parkingSlot.getSlotID(), car));
+    }
+
+    @Override
+    public void carLeft(ParkingSlot parkingSlot, Car car) {
+        runOnFxThread(() -> parkedCars.remove(parkingSlot.getSlotID()));
+    }
+
+    // Observable collections must only be changed on the JavaFX Application Thread
+    private void runOnFxThread(Runnable update) {
+        if (Platform.isFxApplicationThread()) {
+            update.run();
+        } else {
+            Platform.runLater(update);
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/**
+* This class keeps running occupancy figures for a CarPark as cars park and
+* leave: how many cars are parked in each zone, and over a sliding window
+* (the last hour, say) how many arrived and left, how long they stayed, how
+* full the car park was on average and at its peak. Each event updates a few
+* counters in one time bucket, so the figures are ready at any moment for
+* signage and dashboards without scanning the slots.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Time is cut into buckets of equal length held in a ring; an event adds to the bucket
+ * for the current time, clearing it first if it still holds an older period. A window
+ * is read by adding up the buckets it covers, newest first.
+ *
+ * Average occupancy is the time integral of the occupied count divided by the window
+ * length. Within a bucket starting at s, d(count x t) = count dt + t d(count), so
+ *   integral from s to e of count dt = count(e) x (e - s) - sum of (t - s) x change at t
+ * and each bucket only keeps the sum of (t - s) x change, one add per event. count(e)
+ * for each bucket comes from walking back from the current count by each bucket's
+ * arrivals minus departures.
+ */
+public class OccupancyAnalytics implements CarParkListener {
+    private static final long DEFAULT_BUCKET_MILLIS = 60_000; // One-minute buckets
+    private static final int DEFAULT_BUCKET_COUNT = 24 * 60; // A day of them
+
+    private final CarPark carPark;
+    private final long bucketMillis;
+    private final Bucket[] buckets; // Ring of buckets, indexed by bucket number modulo its length
+    private final AtomicInteger occupied; // Cars parked now
+    private final AtomicInteger slots; // Slots in the car park now
+    private final Map<String, Zone> zones; // Slot and car counts for each zone
+    private final ZoneId timeZone; // Time zone the day for the daily peak starts in
+    private final AtomicInteger peakToday; // Most cars parked at once since the day started
+    private volatile long dayEndsAtMillis; // When peakToday next starts again
+    private boolean started; // Whether start has been called, guarded by this
+
+    // Counts for one period of bucketMillis
+    private static final class Bucket {
+        volatile long number = -1; // Which period the bucket holds: its start time divided by bucketMillis
+        final LongAdder arrivals = new LongAdder();
+        final LongAdder departures = new LongAdder();
+        final LongAdder dwellMillis = new LongAdder(); // Total stay of the cars that left
+        final LongAdder weightedChanges = new LongAdder(); // Sum of (time into bucket) x (change in occupied count)
+        final AtomicInteger peak = new AtomicInteger(); // Most cars parked at once during the period
+
+        void reset(long newNumber, int occupiedNow) {
+            arrivals.reset();
+            departures.reset();
+            dwellMillis.reset();
+            weightedChanges.reset();
+            peak.set(occupiedNow);
+            number = newNumber;
+        }
+    }
+
+    // Slot and car counts for one zone
+    private static final class Zone {
+        final AtomicInteger slots = new AtomicInteger();
+        final AtomicInteger occupied = new AtomicInteger();
+    }
+
+    /**
+     * Figures for a sliding window ending now.
+     */
+    public static final class Window {
+        private final long windowMillis;
+        private final long arrivals;
+        private final long departures;
+        private final long dwellMillis;
+        private final double averageOccupied;
+        private final int peakOccupied;
+        private final int slotCount;
+
+        Window(long windowMillis, long arrivals, long departures, long dwellMillis, double averageOccupied,
+                int peakOccupied, int slotCount) {
+            this.windowMillis = windowMillis;
+            this.arrivals = arrivals;
+            this.departures = departures;
+            this.dwellMillis = dwellMillis;
+            this.averageOccupied = averageOccupied;
+            this.peakOccupied = peakOccupied;
+            this.slotCount = slotCount;
+        }
+
+        /**
+         * Gets the length of the window.
+         *
+         * @return The window in milliseconds.
+         */
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        /**
+         * Gets the number of cars that parked during the window.
+         *
+         * @return The arrivals.
+         */
+        public long getArrivals() {
+            return arrivals;
+        }
+
+        /**
+         * Gets the number of cars that left during the window.
+         *
+         * @return The departures.
+         */
+        public long getDepartures() {
+            return departures;
+        }
+
+        /**
+         * Gets the arrival rate over the window.
+         *
+         * @return Arrivals per hour.
+         */
+        public double getArrivalsPerHour() {
+            return arrivals * 3_600_000.0 / windowMillis;
+        }
+
+        /**
+         * Gets the departure rate over the window.
+         *
+         * @return Departures per hour.
+         */
+        public double getDeparturesPerHour() {
+            return departures * 3_600_000.0 / windowMillis;
+        }
+
+        /**
+         * Gets the average stay of the cars that left during the window.
+         *
+         * @return The average stay in milliseconds, or 0 if no car left.
+         */
+        public long getAverageDwellMillis() {
+            return departures > 0 ? dwellMillis / departures : 0;
+        }
+
+        /**
+         * Gets the average number of cars parked over the window.
+         *
+         * @return The time-weighted average occupied count.
+         */
+        public double getAverageOccupied() {
+            return averageOccupied;
+        }
+
+        /**
+         * Gets the average share of slots occupied over the window, against the current slot count.
+         *
+         * @return The average occupancy, from 0 to 1.
+         */
+        public double getAverageOccupancy() {
+            return slotCount > 0 ? averageOccupied / slotCount : 0;
+        }
+
+        /**
+         * Gets the most cars parked at once during the window.
+         *
+         * @return The peak occupied count.
+         */
+        public int getPeakOccupied() {
+            return peakOccupied;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("arrivals=%d (%.1f/h), departures=%d (%.1f/h), averageDwell=%s, averageOccupied=%.1f (%.1f%%), peak=%d",
+                    arrivals, getArrivalsPerHour(), departures, getDeparturesPerHour(),
+                    CarPark.formatDuration(getAverageDwellMillis()), averageOccupied, getAverageOccupancy() * 100, peakOccupied);
+        }
+    }
+
+    /**
+     * Creates figures for a car park in one-minute buckets covering the last day; call start to begin.
+     *
+     * @param carPark The car park to watch.
+     */
+    public OccupancyAnalytics(CarPark carPark) {
+        this(carPark, DEFAULT_BUCKET_MILLIS, DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * Creates figures for a car park; call start to begin.
+     *
+     * @param carPark      The car park to watch.
+     * @param bucketMillis The length of each time bucket; windows are measured in whole buckets.
+     * @param bucketCount  The number of buckets kept, which sets the longest window.
+     */
+    public OccupancyAnalytics(CarPark carPark, long bucketMillis, int bucketCount) {
+        if (bucketMillis <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("Bucket length and count must be positive");
+        }
+        this.carPark = carPark;
+        this.bucketMillis = bucketMillis;
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.occupied = new AtomicInteger();
+        this.slots = new AtomicInteger();
+        this.zones = new ConcurrentHashMap<>();
+        this.timeZone = ZoneId.systemDefault();
+        this.peakToday = new AtomicInteger();
+    }
+
+    /**
+     * Starts keeping figures. The slots and cars already there are counted first, so start
+     * it before the gates open or the counts may be off by the cars that move while it is
+     * counting.
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("Occupancy analytics already started");
+        }
+        started = true;
+        for (ParkingSlot parkingSlot : carPark.getParkingSlots()) {
+            Zone zone = zoneFor(parkingSlot);
+            zone.slots.incrementAndGet();
+            slots.incrementAndGet();
+            if (parkingSlot.isOccupied()) {
+                zone.occupied.incrementAndGet();
+                occupied.incrementAndGet();
+            }
+        }
+        peakToday.set(occupied.get());
+        dayEndsAtMillis = startOfNextDay(System.currentTimeMillis());
+        carPark.addListener(this);
+    }
+
+    /**
+     * Stops watching the car park. The figures so far can still be read.
+     */
+    public void close() {
+        carPark.removeListener(this);
+    }
+
+    // Listener methods run on the gate's thread with the slot locked; each is a few counter updates
+
+    @Override
+    public void slotAdded(ParkingSlot parkingSlot) {
+        zoneFor(parkingSlot).slots.incrementAndGet();
+        slots.incrementAndGet();
+    }
+
+    @Override
+    public void slotsAdded(List<ParkingSlot> parkingSlots) {
+        // Count each zone's new slots first, so a site import touches each zone counter once
+        Map<String, Integer> added = new HashMap<>();
+        for (ParkingSlot parkingSlot : parkingSlots) {
+            added.merge(CarPark.zoneOf(parkingSlot.getSlotID()), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> zone : added.entrySet()) {
+            zones.computeIfAbsent(zone.getKey(), key -> new Zone()).slots.addAndGet(zone.getValue());
+        }
+        slots.addAndGet(parkingSlots.size());
+    }
+
+    @Override
+    public void slotRemoved(ParkingSlot parkingSlot) {
+        zoneFor(parkingSlot).slots.decrementAndGet();
+        slots.decrementAndGet();
+    }
+
+    @Override
+    public void carParked(ParkingSlot parkingSlot, Car car) {
+        long now = Math.min(car.getParkedAtMillis(), System.currentTimeMillis()); // When the camera saw it, but never in the future
+        zoneFor(parkingSlot).occupied.incrementAndGet();
+        int occupiedNow = occupied.incrementAndGet();
+        Bucket bucket = bucketFor(now);
+        bucket.arrivals.increment();
+        bucket.weightedChanges.add(timeInto(bucket, now));
+        raise(bucket.peak, occupiedNow);
+        raisePeakToday(now, occupiedNow);
+    }
+
+    @Override
+    public void carLeft(ParkingSlot parkingSlot, Car car, long leftAtMillis) {
+        long now = Math.min(leftAtMillis, System.currentTimeMillis()); // When the camera saw it, but never in the future
+        zoneFor(parkingSlot).occupied.decrementAndGet();
+        occupied.decrementAndGet();
+        Bucket bucket = bucketFor(now);
+        bucket.departures.increment();
+        bucket.dwellMillis.add(Math.max(0, now - car.getParkedAtMillis()));
+        bucket.weightedChanges.add(-timeInto(bucket, now));
+    }
+
+    /**
+     * Gets the number of cars parked now.
+     *
+     * @return The occupied count.
+     */
+    public int getOccupiedCount() {
+        return occupied.get();
+    }
+
+    /**
+     * Gets the share of slots occupied now.
+     *
+     * @return The occupancy, from 0 to 1.
+     */
+    public double getOccupancy() {
+        int slotCount = slots.get();
+        return slotCount > 0 ? (double) occupied.get() / slotCount : 0;
+    }
+
+    /**
+     * Gets the number of free slots in a zone now, as shown on a zone's sign.
+     *
+     * @param zone The zone, e.g. "L1-A" (see CarPark.zoneOf).
+     * @return The free slots, or 0 if there is no such zone.
+     */
+    public int getFreeCount(String zone) {
+        Zone counts = zones.get(zone);
+        return counts == null ? 0 : Math.max(0, counts.slots.get() - counts.occupied.get());
+    }
+
+    /**
+     * Gets the number of cars parked in a zone now.
+     *
+     * @param zone The zone, e.g. "L1-A" (see CarPark.zoneOf).
+     * @return The occupied count, or 0 if there is no such zone.
+     */
+    public int getOccupiedCount(String zone) {
+        Zone counts = zones.get(zone);
+        return counts == null ? 0 : counts.occupied.get();
+    }
+
+    /**
+     * Gets the share of slots occupied now in every zone that has slots.
+     *
+     * @return The occupancy of each zone, from 0 to 1, by zone name.
+     */
+    public Map<String, Double> getOccupancyByZone() {
+        Map<String, Double> occupancy = new TreeMap<>();
+        for (Map.Entry<String, Zone> zone : zones.entrySet()) {
+            int slotCount = zone.getValue().slots.get();
+            if (slotCount > 0) {
+                occupancy.put(zone.getKey(), (double) zone.getValue().occupied.get() / slotCount);
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * Gets the most cars parked at once since midnight.
+     *
+     * @return The peak occupied count today.
+     */
+    public int getPeakToday() {
+        raisePeakToday(System.currentTimeMillis(), occupied.get()); // Starts a new day if one has begun
+        return peakToday.get();
+    }
+
+    /**
+     * Gets the figures for a window ending now. The window is rounded up to whole buckets
+     * and cut to the buckets kept.
+     *
+     * @param windowMillis The length of the window, e.g. 3,600,000 for the last hour.
+     * @return The figures.
+     */
+    public Window window(long windowMillis) {
+        long now = System.currentTimeMillis();
+        long newest = now / bucketMillis;
+        int count = (int) Math.min(buckets.length, Math.max(1, (windowMillis + bucketMillis - 1) / bucketMillis));
+        long arrivals = 0;
+        long departures = 0;
+        long dwellMillis = 0;
+        double occupiedMillis = 0;
+        int occupiedNow = occupied.get();
+        int peak = occupiedNow;
+        int occupiedAtEnd = occupiedNow; // Cars parked at the end of the bucket being added up
+        for (long number = newest; number > newest - count; number--) {
+            long start = number * bucketMillis;
+            long end = number == newest ? now : start + bucketMillis;
+            Bucket bucket = buckets[(int) Math.floorMod(number, (long) buckets.length)];
+            if (bucket.number != number) {
+                occupiedMillis += (double) occupiedAtEnd * (end - start); // Nothing happened; the count held
+                continue;
+            }
+            long bucketArrivals = bucket.arrivals.sum();
+            long bucketDepartures = bucket.departures.sum();
+            arrivals += bucketArrivals;
+            departures += bucketDepartures;
+            dwellMillis += bucket.dwellMillis.sum();
+            peak = Math.max(peak, bucket.peak.get());
+            occupiedMillis += (double) occupiedAtEnd * (end - start) - bucket.weightedChanges.sum();
+            occupiedAtEnd -= (int) (bucketArrivals - bucketDepartures); // Count at the start of this bucket
+        }
+        long spanMillis = (count - 1) * bucketMillis + (now - newest * bucketMillis);
+        double averageOccupied = spanMillis > 0 ? Math.max(0, occupiedMillis / spanMillis) : occupiedNow;
+        return new Window(Math.max(1, spanMillis), arrivals, departures, dwellMillis, averageOccupied, peak, slots.get());
+    }
+
+    // Gets the bucket for a time, clearing it first if it still holds an older period
+    private Bucket bucketFor(long now) {
+        long number = now / bucketMillis;
+        Bucket bucket = buckets[(int) Math.floorMod(number, (long) buckets.length)];
+        if (bucket.number < number) {
+            synchronized (bucket) {
+                if (bucket.number < number) {
+                    bucket.reset(number, occupied.get());
+                }
+            }
+        }
+        return bucket; // An event from an earlier period that was overtaken lands in the newer one
+    }
+
+    // How far into a bucket's period a time falls; 0 for an event that landed in a newer bucket
+    private long timeInto(Bucket bucket, long now) {
+        return Math.max(0, now - bucket.number * bucketMillis);
+    }
+
+    private void raisePeakToday(long now, int occupiedNow) {
+        if (now >= dayEndsAtMillis) {
+            synchronized (peakToday) {
+                if (now >= dayEndsAtMillis) {
+                    peakToday.set(occupied.get()); // A new day starts from the cars parked now
+                    dayEndsAtMillis = startOfNextDay(now);
+                }
+            }
+        }
+        raise(peakToday, occupiedNow);
+    }
+
+    private static void raise(AtomicInteger peak, int value) {
+        int current = peak.get();
+        while (value > current && !peak.compareAndSet(current, value)) {
+            current = peak.get();
+        }
+    }
+
+    private Zone zoneFor(ParkingSlot parkingSlot) {
+        return zones.computeIfAbsent(CarPark.zoneOf(parkingSlot.getSlotID()), key -> new Zone());
+    }
+
+    private long startOfNextDay(long now) {
+        LocalDate today = Instant.ofEpochMilli(now).atZone(timeZone).toLocalDate();
+        return today.plusDays(1).atStartOfDay(timeZone).toInstant().toEpochMilli();
+    }
+}
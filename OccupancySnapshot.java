@@ -0,0 +1,120 @@
+/**
+* This class holds a reusable copy of which parking slots are occupied. It is
+* filled by CarPark.refreshSnapshot and only copies anything when the car park
+* has changed since the last refresh, so a dashboard can poll it as often as it
+* likes without creating garbage.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+public class OccupancySnapshot {
+    private long version; // Version of the car park this snapshot was taken at
+    private int indexLimit; // One past the highest slot index in the snapshot
+    private int slotCount; // Number of slots in the snapshot
+    private int occupiedCount; // Number of occupied slots in the snapshot
+    private long[] occupied; // Occupancy bits by slot index
+    private ParkingSlot[] slots; // Slots by index; null where no slot has that index
+
+    /**
+     * Creates an empty snapshot; the first refresh always fills it.
+     */
+    public OccupancySnapshot() {
+        version = -1;
+        occupied = new long[0];
+        slots = new ParkingSlot[0];
+    }
+
+    /**
+     * Refills the snapshot from a slot store unless the store is unchanged.
+     * The buffers are only replaced when the store has outgrown them.
+     *
+     * @param slotStore The store to copy.
+     * @return True if the snapshot changed; false if the store was unchanged.
+     */
+    boolean refresh(SlotStore slotStore) {
+        long currentVersion = slotStore.version(); // Read first, so a change during the copy is picked up next time
+        if (currentVersion == version) {
+            return false; // Nothing changed, nothing copied
+        }
+        int limit = slotStore.indexLimit();
+        if (slots.length < limit) {
+            int capacity = Math.max(limit, slots.length * 2);
+            slots = new ParkingSlot[capacity];
+            occupied = new long[(capacity + 63) >>> 6];
+        }
+        slotStore.copySlots(slots, limit);
+        slotStore.copyOccupancy(occupied, limit);
+        indexLimit = limit;
+        slotCount = slotStore.size();
+        occupiedCount = slotStore.occupiedCount();
+        version = currentVersion;
+        return true;
+    }
+
+    /**
+     * Gets the version of the car park this snapshot was taken at.
+     *
+     * @return The snapshot version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the bound for walking the snapshot by slot index.
+     *
+     * @return One past the highest slot index.
+     */
+    public int getIndexLimit() {
+        return indexLimit;
+    }
+
+    /**
+     * Gets the number of slots in the snapshot.
+     *
+     * @return The slot count.
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Gets the number of occupied slots in the snapshot.
+     *
+     * @return The occupied slot count.
+     */
+    public int getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    /**
+     * Gets the slot at an index.
+     *
+     * @param index The slot index.
+     * @return The slot, or null if no slot had that index.
+     */
+    public ParkingSlot getSlot(int index) {
+        return index < indexLimit ? slots[index] : null;
+    }
+
+    /**
+     * Checks whether the slot at an index was occupied.
+     *
+     * @param index The slot index.
+     * @return True if the slot was occupied.
+     */
+    public boolean isOccupied(int index) {
+        return index < indexLimit && (occupied[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Gives direct, read-only access to the occupancy bits, one bit per slot index.
+     * Only the first (getIndexLimit() + 63) / 64 words are meaningful.
+     *
+     * @return The occupancy bitset.
+     */
+    public long[] getOccupancyBits() {
+        return occupied;
+    }
+}
@@ -7,12 +7,14 @@
 * @date Created on 22 October 2023
 */
 
-import javafx.beans.property.*;
-
+// The slot's own monitor guards its state; CarPark locks the slot while it parks or removes a car
 public class ParkingSlot {
-    private String slotID;
-    private BooleanProperty occupied;
-    private ObjectProperty<Car> parkedCar;
+    private final String slotID;
+    private boolean occupied;
+    private Car parkedCar;
+    private boolean queuedAsFree; // Whether the slot is waiting in the car park's free-slot queue
+    private boolean inService; // Whether gates may use the slot; false until the car park has reported its addition
+    private int index; // Dense index given by the car park's SlotStore, or -1 when not in a car park
     
     /**
      * Initializes a new parking slot with the provided slot identifier.
@@ -22,8 +24,9 @@ public class ParkingSlot {
     // Constructor to initialize the parking slot
     public ParkingSlot(String slotID) {
         this.slotID = slotID;// Initialize the slot ID
-        this.occupied = new SimpleBooleanProperty(false);// Initialize as unoccupied
-        this.parkedCar = new SimpleObjectProperty<>(null);// Initialize with no parked car
+        this.occupied = false;// Initialize as unoccupied
+        this.parkedCar = null;// Initialize with no parked car
+        this.index = -1;// Initialize as not belonging to a car park
     }
 
     /**
@@ -42,16 +45,12 @@ public class ParkingSlot {
      * @return True if the parking slot is occupied; otherwise, false.
      */
     // Getter method to check if the parking slot is occupied
-    public BooleanProperty occupiedProperty() {
+    public synchronized boolean isOccupied() {
         return occupied;
     }
-    
-    public boolean isOccupied() {
-        return occupied.get();
-    }
 
-    public void setOccupied(boolean occupied) {
-        this.occupied.set(occupied);
+    public synchronized void setOccupied(boolean occupied) {
+        this.occupied = occupied;
     }
     
     /**
@@ -60,47 +59,73 @@ public class ParkingSlot {
      * @return The parked car or null if the slot is empty.
      */
     // Getter method to retrieve the parked car
-    public ObjectProperty<Car> parkedCarProperty() {
+    public synchronized Car getParkedCar() {
         return parkedCar;
     }
 
-    public Car getParkedCar() {
-        return parkedCar.get();
+    // Used by SlotStore to record the slot's dense index
+    int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    // Used by CarPark, under the slot lock, so a free slot is queued for automatic assignment only once
+    boolean isQueuedAsFree() {
+        return queuedAsFree;
+    }
+
+    void setQueuedAsFree(boolean queuedAsFree) {
+        this.queuedAsFree = queuedAsFree;
+    }
+
+    // Used by CarPark, under the slot lock, so gates only use a slot once its addition has been reported
+    boolean isInService() {
+        return inService;
+    }
+
+    void setInService(boolean inService) {
+        this.inService = inService;
     }
 
     /**
      * Parks a car in the slot if it's unoccupied.
      *
      * @param car The car to park in the slot.
+     * @return True if the car was parked; false if the slot is already occupied.
      */
     // Method to park a car in the slot
-    public void parkCar(Car car) {
-        if (!occupied.get()) {
-            parkedCar.set(car);// Set the parked car
-            occupied.set(true);
-        } else {
-            System.out.println("Parking slot is already occupied.");
+    public synchronized boolean parkCar(Car car) {
+        if (occupied) {
+            return false; // Parking slot is already occupied
         }
+        parkedCar = car;// Set the parked car
+        occupied = true;
+        return true;
     }
     
     /**
      * Removes a car from the parking slot if it's occupied.
+     *
+     * @return True if a car was removed; false if the slot is already empty.
      */
     // Method to remove a car from the slot
-    public void removeCar() {
-        if (occupied.get()) {
-            parkedCar.set(null); // Remove the parked car reference
-            occupied.set(false); // Mark the slot as unoccupied
-        } else {
-            System.out.println("Parking slot is already empty.");
+    public synchronized boolean removeCar() {
+        if (!occupied) {
+            return false; // Parking slot is already empty
         }
+        parkedCar = null; // Remove the parked car reference
+        occupied = false; // Mark the slot as unoccupied
+        return true;
     }
 
     // Override toString() to provide a better representation of the ParkingSlot
     @Override
-    public String toString() {
-        String status = occupied.get() ? "Occupied" : "Empty";
-        String carInfo = occupied.get() ? parkedCar.get().toString() : "No car parked";
+    public synchronized String toString() {
+        String status = occupied ? "Occupied" : "Empty";
+        String carInfo = occupied ? parkedCar.toString() : "No car parked";
 
         return "ParkingSlot{" +
                 "slotID='" + slotID + '\'' +
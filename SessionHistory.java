@@ -0,0 +1,809 @@
+/**
+* This class keeps a record of every completed parking session (registration
+* number, slot, entry and exit time) on disk, one file per calendar month of
+* exit time, and answers questions such as "every stay by this car this month"
+* or "every session in this slot between two times" without reading the whole
+* history into memory. Sessions are written by a background thread in batches.
+* Only finished months have an index on disk: after a restart, the first session
+* recorded rebuilds the current month's index by reading that month's whole data
+* file, so that first write takes time in proportion to the month's size.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/*
+ * Each month has a data file, sessions-YYYY-MM.dat: a 4-byte magic number, then records of
+ *   [int payload length][int CRC32 of payload][long entry][long exit][registration][slot ID]
+ * with strings stored as in the journal. A record cut short by a crash ends the file.
+ *
+ * The month being written keeps its registration and slot indexes in memory. Once the
+ * month is over (or the history is closed) they are written to sessions-YYYY-MM.idx:
+ *   [int magic][long earliest entry][int rows]
+ *   rows x [long registration hash][long record offset], sorted by hash
+ *   rows x [long slot ID hash][long record offset], sorted by hash
+ * so a lookup in a finished month is a binary search of the mapped index followed by
+ * reading only the matching records. A month whose index is missing is indexed again
+ * the first time it is searched. Each month may hold up to 2 GB of records. An index is
+ * forced to disk before it is renamed into place, so it never refers to records that a
+ * crash lost.
+ *
+ * A session is filed under the month it ended in, so a search skips every month that
+ * ended before its start and every month whose earliest entry is after its end.
+ */
+public class SessionHistory implements CarParkListener, Closeable {
+    private static final int DATA_MAGIC = 0x43504831; // "CPH1"
+    private static final int INDEX_MAGIC = 0x43505831; // "CPX1"
+    private static final int INDEX_HEADER = 4 + 8 + 4;
+    private static final int MAX_BATCH = 4096; // Most sessions written per fsync
+    private static final int MAX_QUEUED = 1 << 20; // Most sessions waiting to be written before departures are dropped
+    private static final long MAX_RETRY_DELAY_MILLIS = 10_000; // Longest wait between attempts at a failing write
+    private static final int CLOSING_ATTEMPTS = 3; // Attempts left for a failing write once the history is closing
+    private static final String PREFIX = "sessions-";
+
+    private final Path directory;
+    private final CarPark carPark; // The car park being recorded, or null
+    private final ZoneId zone; // Time zone the months are counted in
+    private final BlockingQueue<Session> queue; // Completed sessions waiting to be written
+    private final LongAdder dropped; // Departures not recorded because the queue was full
+    private Thread writer; // Background thread that writes sessions in batches, started by open
+    private final TreeMap<YearMonth, Partition> partitions; // Every month on disk; guarded by this
+    private Partition current; // The month being written; guarded by this, changed only by the writer
+    private ByteBuffer buffer; // Reused encoding buffer, used only by the writer thread
+    private volatile boolean running;
+
+    /**
+     * One completed parking session.
+     */
+    public static final class Session {
+        private final String registrationNumber;
+        private final String slotID;
+        private final long entryMillis;
+        private final long exitMillis;
+
+        /**
+         * Creates a session record.
+         *
+         * @param registrationNumber The car's registration number.
+         * @param slotID             The slot the car was parked in.
+         * @param entryMillis        When the car parked, in epoch milliseconds.
+         * @param exitMillis         When the car left, in epoch milliseconds.
+         */
+        public Session(String registrationNumber, String slotID, long entryMillis, long exitMillis) {
+            this.registrationNumber = registrationNumber;
+            this.slotID = slotID;
+            this.entryMillis = entryMillis;
+            this.exitMillis = exitMillis;
+        }
+
+        /**
+         * Gets the car's registration number.
+         *
+         * @return The registration number.
+         */
+        public String getRegistrationNumber() {
+            return registrationNumber;
+        }
+
+        /**
+         * Gets the slot the car was parked in.
+         *
+         * @return The slot ID.
+         */
+        public String getSlotID() {
+            return slotID;
+        }
+
+        /**
+         * Gets when the car parked.
+         *
+         * @return The entry time in epoch milliseconds.
+         */
+        public long getEntryMillis() {
+            return entryMillis;
+        }
+
+        /**
+         * Gets when the car left.
+         *
+         * @return The exit time in epoch milliseconds.
+         */
+        public long getExitMillis() {
+            return exitMillis;
+        }
+
+        /**
+         * Gets how long the car stayed.
+         *
+         * @return The stay in milliseconds.
+         */
+        public long getDwellMillis() {
+            return exitMillis - entryMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Session{registration=" + registrationNumber + ", slot=" + slotID + ", entry=" + Instant.ofEpochMilli(entryMillis)
+                    + ", exit=" + Instant.ofEpochMilli(exitMillis) + '}';
+        }
+    }
+
+    // Record offsets for one registration number or slot ID, in the order they were written
+    private static final class OffsetList {
+        long[] offsets = new long[2];
+        int size;
+
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+    }
+
+    // One month of history. While it is being written its indexes are held in memory; once
+    // finished its data and index files are mapped read-only when first searched
+    private static final class Partition {
+        final YearMonth month;
+        final Path dataFile;
+        final Path indexFile;
+        FileChannel channel; // Open only while the month is being written
+        long length; // Bytes of complete records written
+        Map<String, OffsetList> byRegistration; // Only while the month is being written or indexed
+        Map<String, OffsetList> bySlot;
+        int rows;
+        long minEntryMillis = Long.MAX_VALUE;
+        ByteBuffer data; // Mapped once the month is finished and searched
+        ByteBuffer index;
+
+        Partition(Path directory, YearMonth month) {
+            this.month = month;
+            this.dataFile = directory.resolve(PREFIX + month + ".dat");
+            this.indexFile = directory.resolve(PREFIX + month + ".idx");
+        }
+    }
+
+    /**
+     * Opens the session history in a directory, counting months in the system time zone,
+     * and starts recording every car that leaves the car park. Open it after any journal
+     * has been replayed, so the replayed departures are not recorded twice.
+     *
+     * @param directory The directory holding the history; it is created if it does not exist.
+     * @param carPark   The car park whose departures are recorded.
+     * @return The open history.
+     * @throws IOException If the directory cannot be read or created.
+     */
+    public static SessionHistory open(Path directory, CarPark carPark) throws IOException {
+        return open(directory, carPark, ZoneId.systemDefault());
+    }
+
+    /**
+     * Opens the session history in a directory and starts recording every car that leaves the car park.
+     *
+     * @param directory The directory holding the history; it is created if it does not exist.
+     * @param carPark   The car park whose departures are recorded, or null to only search the history.
+     * @param zone      The time zone months are counted in.
+     * @return The open history.
+     * @throws IOException If the directory cannot be read or created.
+     */
+    public static SessionHistory open(Path directory, CarPark carPark, ZoneId zone) throws IOException {
+        SessionHistory history = new SessionHistory(directory, carPark, zone);
+        history.start();
+        return history;
+    }
+
+    // Finds the months on disk; open starts the writer and the recording once this has returned
+    private SessionHistory(Path directory, CarPark carPark, ZoneId zone) throws IOException {
+        this.directory = directory;
+        this.carPark = carPark;
+        this.zone = zone;
+        this.queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+        this.dropped = new LongAdder();
+        this.partitions = new TreeMap<>();
+        this.buffer = ByteBuffer.allocateDirect(1 << 20);
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*.dat")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    YearMonth month = YearMonth.parse(name.substring(PREFIX.length(), name.length() - 4));
+                    partitions.put(month, new Partition(directory, month));
+                } catch (DateTimeParseException e) {
+                    // Not one of ours; leave it alone
+                }
+            }
+        }
+    }
+
+    // Starts the writer thread, then listens to the car park
+    private void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "session-history");
+        writer.setDaemon(true);
+        writer.start();
+        if (carPark != null) {
+            carPark.addListener(this);
+        }
+    }
+
+    /**
+     * Records a completed session. Departures from the car park are recorded automatically;
+     * this is for sessions that ended elsewhere, such as an import of older history. If the
+     * writer has fallen far behind, this waits for room rather than dropping the session.
+     *
+     * @param session The session to record.
+     * @throws InterruptedException     If interrupted while waiting for room.
+     * @throws IllegalArgumentException If the registration number or slot ID is missing or too long to store.
+     */
+    public void record(Session session) throws InterruptedException {
+        if (session.registrationNumber == null || !CarPark.fits(session.registrationNumber)
+                || !CarPark.isValidSlotID(session.slotID)) {
+            throw new IllegalArgumentException("Session's registration number or slot ID is missing or too long to record");
+        }
+        queue.put(session);
+    }
+
+    /**
+     * Finds every stay by a car that overlaps a calendar month.
+     *
+     * @param registrationNumber The registration number.
+     * @param month              The month.
+     * @return The stays, in order of entry time.
+     * @throws IOException If the history cannot be read.
+     */
+    public List<Session> findStaysByRegistration(String registrationNumber, YearMonth month) throws IOException {
+        return findStaysByRegistration(registrationNumber, startOf(month), startOf(month.plusMonths(1)));
+    }
+
+    /**
+     * Finds every stay by a car that overlaps a time range.
+     *
+     * @param registrationNumber The registration number.
+     * @param fromMillis         The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis           The end of the range in epoch milliseconds, exclusive.
+     * @return The stays, in order of entry time.
+     * @throws IOException If the history cannot be read.
+     */
+    public List<Session> findStaysByRegistration(String registrationNumber, long fromMillis, long toMillis) throws IOException {
+        return find(registrationNumber, true, fromMillis, toMillis);
+    }
+
+    /**
+     * Finds every session in a slot that overlaps a time range.
+     *
+     * @param slotID     The slot ID.
+     * @param fromMillis The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis   The end of the range in epoch milliseconds, exclusive.
+     * @return The sessions, in order of entry time.
+     * @throws IOException If the history cannot be read.
+     */
+    public List<Session> findSessionsInSlot(String slotID, long fromMillis, long toMillis) throws IOException {
+        return find(slotID, false, fromMillis, toMillis);
+    }
+
+    /**
+     * Gets the number of sessions waiting to be written. Sessions are searchable once written,
+     * normally within a fraction of a second of the car leaving.
+     *
+     * @return The number of sessions queued.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of departures that were not recorded because the writer had fallen so
+     * far behind that its queue was full, as when the disk has been failing for a long time.
+     *
+     * @return The number of sessions dropped.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops recording, writes every session still queued, writes the index for the month
+     * being written and closes its file.
+     *
+     * @throws IOException If the files cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (carPark != null) {
+            carPark.removeListener(this);
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (current != null) {
+            finish(current); // The writer has stopped, so nothing else touches the month now
+        }
+    }
+
+    // Runs on the gate's thread with the slot locked, so it only queues the session, and never waits:
+    // if the queue is full the session is dropped and counted, and the writer reports it
+    @Override
+    public void carLeft(ParkingSlot parkingSlot, Car car, long leftAtMillis) {
+        if (!queue.offer(new Session(car.getRegistrationNumber(), parkingSlot.getSlotID(), car.getParkedAtMillis(), leftAtMillis))) {
+            dropped.increment();
+        }
+    }
+
+    // Searches the months that can hold a session overlapping the range
+    private List<Session> find(String key, boolean byRegistration, long fromMillis, long toMillis) throws IOException {
+        List<Session> found = new ArrayList<>();
+        List<Partition> candidates;
+        synchronized (this) {
+            // A session that ended before the range starts is in an earlier month than the start
+            candidates = new ArrayList<>(partitions.tailMap(monthOf(fromMillis), true).values());
+        }
+        for (Partition partition : candidates) {
+            synchronized (this) {
+                if (partition == current) {
+                    searchCurrent(partition, key, byRegistration, fromMillis, toMillis, found);
+                    continue;
+                }
+            }
+            searchFinished(partition, key, byRegistration, fromMillis, toMillis, found);
+        }
+        found.sort(Comparator.comparingLong(Session::getEntryMillis));
+        return found;
+    }
+
+    // Searches the month being written through its in-memory index; called holding this while its file is open
+    private void searchCurrent(Partition partition, String key, boolean byRegistration, long fromMillis, long toMillis,
+            List<Session> found) throws IOException {
+        if (partition.minEntryMillis >= toMillis) {
+            return;
+        }
+        OffsetList offsets = (byRegistration ? partition.byRegistration : partition.bySlot).get(key);
+        if (offsets == null) {
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        for (int i = 0; i < offsets.size; i++) {
+            long offset = offsets.offsets[i];
+            header.clear();
+            readFully(partition.channel, header, offset);
+            ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+            readFully(partition.channel, payload, offset + 8);
+            addIfOverlapping(decode(payload, 0), fromMillis, toMillis, found);
+        }
+    }
+
+    // Searches a finished month by binary search of its mapped index
+    private void searchFinished(Partition partition, String key, boolean byRegistration, long fromMillis, long toMillis,
+            List<Session> found) throws IOException {
+        ByteBuffer index;
+        ByteBuffer data;
+        synchronized (partition) {
+            if (partition.channel != null) {
+                // The month became the one being written after the search started
+                synchronized (this) {
+                    if (partition.channel != null) {
+                        searchCurrent(partition, key, byRegistration, fromMillis, toMillis, found);
+                        return;
+                    }
+                }
+            }
+            load(partition);
+            if (partition.minEntryMillis >= toMillis) {
+                return;
+            }
+            index = partition.index;
+            data = partition.data;
+        }
+        int rows = index.getInt(12);
+        int section = INDEX_HEADER + (byRegistration ? 0 : rows * 16);
+        long hash = hash(key);
+        // Find the first entry with the key's hash, then read each record it points to
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index.getLong(section + middle * 16) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int row = low; row < rows && index.getLong(section + row * 16) == hash; row++) {
+            Session session = decode(data, (int) index.getLong(section + row * 16 + 8) + 8);
+            if (key.equals(byRegistration ? session.registrationNumber : session.slotID)) { // Not just the same hash
+                addIfOverlapping(session, fromMillis, toMillis, found);
+            }
+        }
+    }
+
+    private static void addIfOverlapping(Session session, long fromMillis, long toMillis, List<Session> found) {
+        if (session.entryMillis < toMillis && session.exitMillis >= fromMillis) {
+            found.add(session);
+        }
+    }
+
+    // Maps a finished month's files, indexing the month first if its index is missing; called holding the partition
+    private void load(Partition partition) throws IOException {
+        if (partition.index != null) {
+            return;
+        }
+        try (FileChannel dataChannel = FileChannel.open(partition.dataFile, StandardOpenOption.READ)) {
+            partition.data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, dataChannel.size());
+        }
+        if (!Files.exists(partition.indexFile)) {
+            partition.byRegistration = new HashMap<>();
+            partition.bySlot = new HashMap<>();
+            scan(partition, partition.data.duplicate());
+            writeIndex(partition);
+            partition.byRegistration = null; // The index file replaces them
+            partition.bySlot = null;
+        }
+        try (FileChannel indexChannel = FileChannel.open(partition.indexFile, StandardOpenOption.READ)) {
+            ByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            if (index.getInt(0) != INDEX_MAGIC) {
+                throw new IOException(partition.indexFile + " is not a session history index");
+            }
+            partition.minEntryMillis = index.getLong(4);
+            partition.index = index;
+        }
+    }
+
+    // Writer thread: waits for sessions, then writes everything queued with a single fsync
+    private void writeLoop() {
+        List<Session> batch = new ArrayList<>(MAX_BATCH);
+        int failures = 0; // Failed attempts in a row
+        long droppedReported = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    Session first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch, MAX_BATCH - 1);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    writeBatch(batch); // Empties the batch once every session in it is on disk
+                }
+                failures = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                // Keep the sessions not yet written and try them again, waiting longer after each failure
+                failures++;
+                int pending = batch.size();
+                log().log(CarParkLog.Level.ERROR, () -> "Session history could not be written, "
+                        + pending + " sessions kept for another attempt: " + e);
+                if (!running && failures >= CLOSING_ATTEMPTS) {
+                    int lost = batch.size() + queue.size();
+                    log().log(CarParkLog.Level.ERROR, () -> "Session history closed with " + lost + " sessions unwritten.");
+                    return;
+                }
+                try {
+                    Thread.sleep(Math.min(MAX_RETRY_DELAY_MILLIS, 100L << Math.min(failures, 10)));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            long droppedNow = dropped.sum();
+            if (droppedNow != droppedReported) {
+                long missed = droppedNow - droppedReported;
+                droppedReported = droppedNow;
+                log().log(CarParkLog.Level.ERROR, () -> "Session history fell behind and did not record " + missed + " departures.");
+            }
+        }
+    }
+
+    // Where errors are reported: the car park's log, or nowhere for a history that only searches
+    private CarParkLog log() {
+        return carPark != null ? carPark.getLog() : CarParkLog.NONE;
+    }
+
+    // Writes a batch, one run of sessions per month, and adds each to its month's index. Each run is
+    // taken off the batch once it is on disk, so after a failure the batch holds only what is left
+    private void writeBatch(List<Session> batch) throws IOException {
+        long[] offsets = new long[batch.size()];
+        while (!batch.isEmpty()) {
+            YearMonth month = monthOf(batch.get(0).exitMillis);
+            if (current == null || !current.month.equals(month)) {
+                switchTo(month);
+            }
+            int next = 0;
+            buffer.clear();
+            while (next < batch.size() && monthOf(batch.get(next).exitMillis).equals(month)) {
+                offsets[next] = current.length + buffer.position();
+                try {
+                    encode(batch.get(next));
+                } catch (RuntimeException e) {
+                    // A session that can never be encoded is skipped rather than blocking every one behind it
+                    offsets[next] = -1;
+                    Session skipped = batch.get(next);
+                    log().log(CarParkLog.Level.ERROR, () -> "Session history skipped a stay in slot "
+                            + skipped.slotID + " that cannot be recorded: " + e);
+                }
+                next++;
+            }
+            buffer.flip();
+            int written = buffer.remaining();
+            long position = current.length;
+            try {
+                while (buffer.hasRemaining()) {
+                    position += current.channel.write(buffer, position);
+                }
+                current.channel.force(false); // One fsync for the whole run
+            } catch (IOException e) {
+                try {
+                    current.channel.truncate(current.length); // Cut off whatever part of the run reached the file
+                } catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure); // The retry writes over it at the same position anyway
+                }
+                throw e;
+            }
+            synchronized (this) { // Searches see the records only once they are on disk
+                for (int i = 0; i < next; i++) {
+                    if (offsets[i] < 0) {
+                        continue; // Skipped
+                    }
+                    Session session = batch.get(i);
+                    index(current, session.registrationNumber, session.slotID, session.entryMillis, offsets[i]);
+                }
+                current.length += written;
+            }
+            batch.subList(0, next).clear();
+        }
+    }
+
+    // Makes a month the one being written: finishes the previous month and opens this one,
+    // indexing what it already holds if it was written before
+    private void switchTo(YearMonth month) throws IOException {
+        if (current != null) {
+            finish(current);
+        }
+        Partition partition;
+        synchronized (this) {
+            partition = partitions.computeIfAbsent(month, m -> new Partition(directory, m));
+        }
+        synchronized (partition) {
+            partition.data = null; // Forget any mapping; the month is about to grow
+            partition.index = null;
+            partition.byRegistration = new HashMap<>();
+            partition.bySlot = new HashMap<>();
+            partition.rows = 0;
+            partition.minEntryMillis = Long.MAX_VALUE;
+            Files.deleteIfExists(partition.indexFile); // Written again when the month is finished
+            FileChannel channel = FileChannel.open(partition.dataFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long length = 0;
+            if (channel.size() >= 4) {
+                length = scan(partition, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            if (length < channel.size()) {
+                channel.truncate(length); // Drop a record left half-written by a crash
+            }
+            if (length == 0) {
+                ByteBuffer magic = ByteBuffer.allocate(4).putInt(0, DATA_MAGIC);
+                while (magic.hasRemaining()) {
+                    channel.write(magic, magic.position());
+                }
+                channel.force(true);
+                syncDirectory(); // A new month's file must survive a crash along with its first records
+                length = 4;
+            }
+            partition.channel = channel;
+            partition.length = length;
+        }
+        synchronized (this) {
+            current = partition;
+        }
+    }
+
+    // Writes a month's index to disk and closes its data file, leaving it to be mapped when searched
+    private void finish(Partition partition) throws IOException {
+        writeIndex(partition);
+        synchronized (this) {
+            partition.channel.close();
+            partition.channel = null;
+            partition.byRegistration = null;
+            partition.bySlot = null;
+            if (current == partition) {
+                current = null;
+            }
+        }
+    }
+
+    private void writeIndex(Partition partition) throws IOException {
+        Path written = partition.indexFile.resolveSibling(partition.indexFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(partition.minEntryMillis);
+            out.writeInt(partition.rows);
+            writeSection(out, partition.byRegistration);
+            writeSection(out, partition.bySlot);
+            out.flush();
+            channel.force(true); // The index must be on disk before the rename makes it the month's index
+        }
+        Files.move(written, partition.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    // Flushes the history directory so a file just created or renamed in it is still there after a crash
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms, such as Windows, cannot open a directory; files are as durable as they allow
+        }
+    }
+
+    // Writes [hash][offset] for every record under every key, with the keys in hash order
+    private static void writeSection(DataOutputStream out, Map<String, OffsetList> byKey) throws IOException {
+        String[] keys = byKey.keySet().toArray(new String[0]);
+        long[] hashes = new long[keys.length];
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            hashes[i] = hash(keys[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> hashes[i]));
+        for (int i : order) {
+            OffsetList offsets = byKey.get(keys[i]);
+            for (int j = 0; j < offsets.size; j++) {
+                out.writeLong(hashes[i]);
+                out.writeLong(offsets.offsets[j]);
+            }
+        }
+    }
+
+    // Reads a month's records from the start, indexing each; returns the length of its valid part
+    private static long scan(Partition partition, ByteBuffer in) throws IOException {
+        if (in.remaining() < 4) {
+            return 0;
+        }
+        if (in.getInt() != DATA_MAGIC) {
+            throw new IOException(partition.dataFile + " is not a session history file");
+        }
+        CRC32 crc = new CRC32();
+        long validLength = in.position();
+        while (in.remaining() >= 8) {
+            int recordStart = in.position();
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length <= 0 || length > in.remaining()) {
+                break; // Cut short by a crash
+            }
+            crc.reset();
+            crc.update(in.slice().limit(length));
+            if ((int) crc.getValue() != checksum) {
+                break; // Damaged record
+            }
+            Session session = decode(in, in.position());
+            index(partition, session.registrationNumber, session.slotID, session.entryMillis, recordStart);
+            in.position(in.position() + length);
+            validLength = in.position();
+        }
+        return validLength;
+    }
+
+    private static void index(Partition partition, String registrationNumber, String slotID, long entryMillis, long offset) {
+        partition.byRegistration.computeIfAbsent(registrationNumber, key -> new OffsetList()).add(offset);
+        partition.bySlot.computeIfAbsent(slotID, key -> new OffsetList()).add(offset);
+        partition.rows++;
+        partition.minEntryMillis = Math.min(partition.minEntryMillis, entryMillis);
+    }
+
+    // Appends one record to the buffer, growing the buffer if the record would not fit
+    private void encode(Session session) {
+        byte[] registration = utf8(session.registrationNumber);
+        byte[] slot = utf8(session.slotID);
+        int size = 8 + 16 + 2 + registration.length + 2 + slot.length;
+        if (buffer.remaining() < size) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        int start = buffer.position();
+        buffer.position(start + 8); // Leave room for the length and checksum
+        buffer.putLong(session.entryMillis);
+        buffer.putLong(session.exitMillis);
+        buffer.putShort((short) registration.length);
+        buffer.put(registration);
+        buffer.putShort((short) slot.length);
+        buffer.put(slot);
+        int end = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + 8).limit(end));
+        buffer.putInt(start, end - start - 8);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+
+    // Reads a record's payload at an absolute position, leaving the buffer's position alone
+    private static Session decode(ByteBuffer in, int position) {
+        long entryMillis = in.getLong(position);
+        long exitMillis = in.getLong(position + 8);
+        int registrationLength = in.getShort(position + 16) & 0xffff;
+        String registrationNumber = getString(in, position + 18, registrationLength);
+        int slotPosition = position + 18 + registrationLength;
+        int slotLength = in.getShort(slotPosition) & 0xffff;
+        String slotID = getString(in, slotPosition + 2, slotLength);
+        return new Session(registrationNumber, slotID, entryMillis, exitMillis);
+    }
+
+    private static String getString(ByteBuffer in, int position, int length) {
+        byte[] bytes = new byte[length];
+        in.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Strings are stored as an unsigned 16-bit byte count; the car park refuses longer slot IDs and
+    // car details, so a longer string is refused here too rather than cut short
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > CarPark.MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long for the session history");
+        }
+        return bytes;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer into, long position) throws IOException {
+        while (into.hasRemaining()) {
+            if (channel.read(into, position + into.position()) < 0) {
+                throw new IOException("Session history ended early");
+            }
+        }
+    }
+
+    // 64-bit FNV-1a over the string's characters; matches are checked against the record itself
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private YearMonth monthOf(long epochMillis) {
+        return YearMonth.from(Instant.ofEpochMilli(epochMillis).atZone(zone));
+    }
+
+    private long startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+* This class is a case-insensitive index from a car attribute (such as its make)
+* to the parking slots holding cars with that attribute.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SlotIndex {
+    private final Map<String, Set<ParkingSlot>> slotsByKey; // Normalized key to the slots holding a matching car
+
+    /**
+     * Creates an empty slot index.
+     */
+    public SlotIndex() {
+        slotsByKey = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records that a slot holds a car with the given key.
+     *
+     * @param key         The attribute value, compared without regard to case.
+     * @param parkingSlot The slot holding the car.
+     */
+    public void add(String key, ParkingSlot parkingSlot) {
+        if (key == null) {
+            return;
+        }
+        // compute() runs atomically per key, so a concurrent remove cannot drop the new entry
+        slotsByKey.compute(normalize(key), (k, slots) -> {
+            if (slots == null) {
+                slots = ConcurrentHashMap.newKeySet();
+            }
+            slots.add(parkingSlot);
+            return slots;
+        });
+    }
+
+    /**
+     * Removes the record that a slot holds a car with the given key.
+     *
+     * @param key         The attribute value, compared without regard to case.
+     * @param parkingSlot The slot that no longer holds the car.
+     */
+    public void remove(String key, ParkingSlot parkingSlot) {
+        if (key == null) {
+            return;
+        }
+        // Drop the key altogether once its last slot is gone so the index does not grow without bound
+        slotsByKey.computeIfPresent(normalize(key), (k, slots) -> {
+            slots.remove(parkingSlot);
+            return slots.isEmpty() ? null : slots;
+        });
+    }
+
+    /**
+     * Finds the slots holding a car with the given key.
+     *
+     * @param key The attribute value, compared without regard to case.
+     * @return The matching slots; empty if there are none.
+     */
+    public List<ParkingSlot> find(String key) {
+        if (key == null) {
+            return new ArrayList<>();
+        }
+        Set<ParkingSlot> slots = slotsByKey.get(normalize(key));
+        return slots == null ? new ArrayList<>() : new ArrayList<>(slots);
+    }
+
+    // Keys are stored in lower case so lookups ignore case like equalsIgnoreCase did
+    private static String normalize(String key) {
+        return key.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,207 @@
+/**
+* This class provisions a car park from a layout file. Each line lists slot IDs
+* and ranges of slot IDs separated by commas, e.g. "L1-A001..L1-A500, L1-B001";
+* ranges are expanded as the file is read and slots are added in batches, so a
+* site with tens of thousands of bays is set up in one operation. A range, and
+* a whole import, may only hold so many slots, so a typo such as "A1..A99999999"
+* is reported with its line number instead of filling the heap.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Layout format:
+ *   - blank lines and lines starting with '#' are ignored
+ *   - every other line holds comma-separated entries
+ *   - an entry is either a slot ID ("L1-A001") or a range of two slot IDs joined by ".."
+ *     ("L1-A001..L1-A500"); both ends must share the same zone and the range is inclusive
+ *   - numbers in a range keep the width of the first ID, so "A001..A100" gives A001, A002, ... A100
+ *   - a range holds at most MAX_RANGE_SLOTS slots, and one import at most its slot limit
+ */
+public class SlotLayoutImporter {
+    private static final int BATCH_SIZE = 4096; // Slots handed to the car park at a time
+    private static final String RANGE_SEPARATOR = "..";
+    private static final int MAX_RANGE_SLOTS = 100_000; // Most slots one range may expand to
+    private static final int DEFAULT_MAX_IMPORT_SLOTS = 1_000_000; // Most slot IDs one import may read
+
+    private final CarPark carPark;
+    private final int maxImportSlots; // Most slot IDs one import may read
+    private final List<ParkingSlot> batch; // Slots read but not yet added
+    private int importLimit; // Value of slotsRead at which the current import is over its limit
+    private int slotsRead; // Slot IDs read from the layout, including ones already in use
+    private int slotsAdded; // Slots actually added to the car park
+
+    /**
+     * Creates an importer that adds slots to the given car park.
+     *
+     * @param carPark The CarPark to provision.
+     */
+    public SlotLayoutImporter(CarPark carPark) {
+        this(carPark, DEFAULT_MAX_IMPORT_SLOTS);
+    }
+
+    /**
+     * Creates an importer that adds slots to the given car park, reading at most a given
+     * number of slot IDs per import.
+     *
+     * @param carPark        The CarPark to provision.
+     * @param maxImportSlots The most slot IDs, counting every ID in every range, that one import may read.
+     */
+    public SlotLayoutImporter(CarPark carPark, int maxImportSlots) {
+        if (maxImportSlots <= 0) {
+            throw new IllegalArgumentException("The slot limit must be positive");
+        }
+        this.carPark = carPark;
+        this.maxImportSlots = maxImportSlots;
+        this.batch = new ArrayList<>(BATCH_SIZE);
+    }
+
+    /**
+     * Imports a layout file.
+     *
+     * @param file The layout file, UTF-8 encoded.
+     * @return The number of slots added; IDs already in use are skipped.
+     * @throws IOException If the file cannot be read or a line is not a valid layout entry.
+     */
+    public int importFile(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importLayout(reader);
+        }
+    }
+
+    /**
+     * Imports a layout from a reader, one line at a time.
+     *
+     * @param layout The layout text.
+     * @return The number of slots added; IDs already in use are skipped.
+     * @throws IOException If the layout cannot be read, a line is not a valid layout entry or
+     *                     the layout holds more slots than allowed. Slots from the lines before
+     *                     the bad one have already been added.
+     */
+    public int importLayout(Reader layout) throws IOException {
+        BufferedReader reader = layout instanceof BufferedReader ? (BufferedReader) layout : new BufferedReader(layout);
+        int addedBefore = slotsAdded;
+        importLimit = (int) Math.min(Integer.MAX_VALUE, (long) slotsRead + maxImportSlots);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue; // Blank line or comment
+            }
+            for (String entry : line.split(",")) {
+                entry = entry.trim();
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                try {
+                    addEntry(entry);
+                } catch (IllegalArgumentException e) {
+                    flush(); // Keep what was read before the bad line
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        flush();
+        return slotsAdded - addedBefore;
+    }
+
+    /**
+     * Gets the number of slot IDs read so far, including IDs that were already in use.
+     *
+     * @return The number of slot IDs read.
+     */
+    public int getSlotsRead() {
+        return slotsRead;
+    }
+
+    /**
+     * Gets the number of slots added to the car park so far.
+     *
+     * @return The number of slots added.
+     */
+    public int getSlotsAdded() {
+        return slotsAdded;
+    }
+
+    // Adds a single slot ID or expands a range, one slot at a time
+    private void addEntry(String entry) {
+        int separator = entry.indexOf(RANGE_SEPARATOR);
+        if (separator < 0) {
+            addSlot(entry);
+            return;
+        }
+        String first = entry.substring(0, separator).trim();
+        String last = entry.substring(separator + RANGE_SEPARATOR.length()).trim();
+        String zone = CarPark.zoneOf(first);
+        if (!zone.equals(CarPark.zoneOf(last))) {
+            throw new IllegalArgumentException("range '" + entry + "' spans two zones");
+        }
+        String firstNumber = first.substring(zone.length());
+        String lastNumber = last.substring(zone.length());
+        if (firstNumber.isEmpty() || lastNumber.isEmpty() || firstNumber.length() > 9 || lastNumber.length() > 9) {
+            throw new IllegalArgumentException("range '" + entry + "' must end in slot numbers of at most 9 digits");
+        }
+        int from = Integer.parseInt(firstNumber);
+        int to = Integer.parseInt(lastNumber);
+        if (to < from) {
+            throw new IllegalArgumentException("range '" + entry + "' runs backwards");
+        }
+        // Check the size before expanding, so an over-large range adds nothing at all
+        long size = (long) to - from + 1;
+        if (size > MAX_RANGE_SLOTS) {
+            throw new IllegalArgumentException("range '" + entry + "' holds " + size + " slots, more than the "
+                    + MAX_RANGE_SLOTS + " allowed in one range");
+        }
+        if (slotsRead + size > importLimit) {
+            throw new IllegalArgumentException("range '" + entry + "' takes the layout past the "
+                    + maxImportSlots + " slots allowed in one import");
+        }
+        int width = firstNumber.length(); // Keep the zero padding of the first ID
+        StringBuilder slotID = new StringBuilder(zone.length() + Math.max(width, lastNumber.length()));
+        for (int number = from; number <= to; number++) {
+            slotID.setLength(0);
+            slotID.append(zone);
+            String digits = Integer.toString(number);
+            for (int pad = digits.length(); pad < width; pad++) {
+                slotID.append('0');
+            }
+            slotID.append(digits);
+            addSlot(slotID.toString());
+        }
+    }
+
+    private void addSlot(String slotID) {
+        if (!CarPark.isValidSlotID(slotID)) {
+            throw new IllegalArgumentException("slot ID of " + slotID.length() + " characters is too long to record");
+        }
+        if (slotsRead >= importLimit) {
+            throw new IllegalArgumentException("slot '" + slotID + "' takes the layout past the "
+                    + maxImportSlots + " slots allowed in one import");
+        }
+        batch.add(new ParkingSlot(slotID));
+        slotsRead++;
+        if (batch.size() == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    // Hands the slots read so far to the car park in one bulk operation
+    private void flush() {
+        if (!batch.isEmpty()) {
+            slotsAdded += carPark.addParkingSlots(batch);
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/**
+* This class draws the car park's slots as a scrollable, zoomable map. Only the
+* slots that are visible are painted, straight from an occupancy snapshot, so a
+* site with thousands of bays scrolls as smoothly as one with a handful. Changes
+* reported by the car park are coalesced into at most one repaint per frame.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class SlotMapPanel extends JComponent implements Scrollable, CarParkListener {
+    private static final long serialVersionUID = 1L;
+    private static final int BASE_CELL_SIZE = 64; // Cell size in pixels at 100% zoom
+    private static final double MIN_ZOOM = 0.125;
+    private static final double MAX_ZOOM = 2.0;
+    private static final int LABEL_MIN_CELL_SIZE = 40; // Below this size slot IDs are not drawn
+    private static final int ICON_MIN_CELL_SIZE = 32; // Below this size slots are drawn as plain colours
+    private static final int REPAINT_DELAY_MILLIS = 16; // Changes within this long are painted together
+
+    private final transient CarPark carPark; // The map is never serialized; transient fields keep the serial lint quiet
+    private final transient Consumer<ParkingSlot> slotClickHandler; // Called with the slot that was clicked
+    private final transient OccupancySnapshot snapshot; // Reused copy of the occupancy the map is drawn from
+    private transient Image occupiedImage; // Slot icons, loaded once in the background; null until then
+    private transient Image availableImage;
+    private final AtomicBoolean repaintPending; // Whether a coalesced repaint is already scheduled
+    private final AtomicBoolean layoutChanged; // Whether slots were added or removed since the last repaint
+    private final Timer repaintTimer; // Fires the coalesced repaint on the Swing thread
+    private double zoom; // Current zoom factor
+    private transient Image scaledOccupiedImage; // Icons scaled to the current cell size, rebuilt only when zoom changes
+    private transient Image scaledAvailableImage;
+    private int scaledImageSize;
+
+    /**
+     * Creates a slot map for a car park and starts following the car park's changes.
+     * The map is only registered as a listener once it is fully constructed. Call on the Swing thread.
+     *
+     * @param carPark          The CarPark to draw.
+     * @param slotClickHandler Called on the Swing thread with the slot the user clicked.
+     * @return The slot map.
+     */
+    public static SlotMapPanel create(CarPark carPark, Consumer<ParkingSlot> slotClickHandler) {
+        SlotMapPanel slotMap = new SlotMapPanel(carPark, slotClickHandler);
+        slotMap.start();
+        return slotMap;
+    }
+
+    // Only sets the fields; create wires up the mouse, the car park and the icon loader afterwards
+    private SlotMapPanel(CarPark carPark, Consumer<ParkingSlot> slotClickHandler) {
+        this.carPark = carPark;
+        this.slotClickHandler = slotClickHandler;
+        this.snapshot = new OccupancySnapshot();
+        this.repaintPending = new AtomicBoolean();
+        this.layoutChanged = new AtomicBoolean();
+        this.repaintTimer = new Timer(REPAINT_DELAY_MILLIS, e -> flushRepaint());
+        this.repaintTimer.setRepeats(false);
+        this.zoom = 1.0;
+    }
+
+    // Sets up painting, listens to the mouse and the car park, and loads the slot icons
+    private void start() {
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setToolTipText(""); // Turn tooltips on; the text comes from getToolTipText(MouseEvent)
+
+        addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                ParkingSlot parkingSlot = slotAt(e.getPoint());
+                if (parkingSlot != null) {
+                    slotClickHandler.accept(parkingSlot);
+                }
+            }
+        });
+        addMouseWheelListener(new MouseWheelListener() {
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isControlDown()) {
+                    setZoom(e.getWheelRotation() < 0 ? zoom * 1.25 : zoom / 1.25); // Ctrl + wheel zooms
+                } else if (getParent() != null) {
+                    // Pass plain wheel scrolling on to the scroll pane
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(SlotMapPanel.this, e, getParent()));
+                }
+            }
+        });
+        carPark.addListener(this);
+
+        // Load the slot icons from disk once, off the Swing thread; slots are drawn as plain colours until then
+        Thread imageLoader = new Thread(() -> {
+            try {
+                Image occupied = ImageIO.read(new File("occupied.jpg"));
+                Image available = ImageIO.read(new File("available.png"));
+                SwingUtilities.invokeLater(() -> {
+                    occupiedImage = occupied;
+                    availableImage = available;
+                    scaledImageSize = 0; // Scale the new icons on the next paint
+                    repaint();
+                });
+            } catch (IOException e) {
+                // Keep drawing plain colours
+            }
+        }, "slot-map-images");
+        imageLoader.setDaemon(true);
+        imageLoader.start();
+    }
+
+    /**
+     * Sets the zoom factor, keeping it within the allowed range.
+     *
+     * @param zoom The new zoom factor, 1.0 being full size.
+     */
+    public void setZoom(double zoom) {
+        this.zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        revalidate(); // The map's size depends on the cell size
+        repaint();
+    }
+
+    /**
+     * Gets the current zoom factor.
+     *
+     * @return The zoom factor, 1.0 being full size.
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Finds the slot drawn at a point on the map.
+     *
+     * @param point The point, in this component's coordinates.
+     * @return The slot drawn there, or null if there is none.
+     */
+    public ParkingSlot slotAt(Point point) {
+        int cellSize = cellSize();
+        int columns = columns();
+        int column = point.x / cellSize;
+        if (point.x < 0 || point.y < 0 || column >= columns) {
+            return null;
+        }
+        carPark.refreshSnapshot(snapshot);
+        return snapshot.getSlot((point.y / cellSize) * columns + column);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        ParkingSlot parkingSlot = slotAt(e.getPoint());
+        if (parkingSlot == null) {
+            return null;
+        }
+        return "Slot ID: " + parkingSlot.getSlotID() + (parkingSlot.isOccupied() ? " (Occupied)" : " (Available)");
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        carPark.refreshSnapshot(snapshot); // Copies nothing if no slot has changed since the last paint
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int cellSize = cellSize();
+        int columns = columns();
+        int limit = snapshot.getIndexLimit();
+        boolean drawIcons = cellSize >= ICON_MIN_CELL_SIZE && occupiedImage != null && availableImage != null;
+        boolean drawLabels = cellSize >= LABEL_MIN_CELL_SIZE;
+        if (drawIcons) {
+            prepareScaledImages(cellSize);
+        }
+        FontMetrics metrics = g.getFontMetrics();
+
+        // Work out which rows and columns intersect the clip, and paint only those cells
+        int firstRow = clip.y / cellSize;
+        int lastRow = (clip.y + clip.height - 1) / cellSize;
+        int firstColumn = clip.x / cellSize;
+        int lastColumn = Math.min(columns - 1, (clip.x + clip.width - 1) / cellSize);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int index = row * columns + column;
+                if (index >= limit) {
+                    return; // Past the last slot
+                }
+                ParkingSlot parkingSlot = snapshot.getSlot(index);
+                if (parkingSlot == null) {
+                    continue; // A deleted slot's index, not reused yet
+                }
+                int x = column * cellSize;
+                int y = row * cellSize;
+                boolean occupied = snapshot.isOccupied(index);
+                if (drawIcons) {
+                    g.drawImage(occupied ? scaledOccupiedImage : scaledAvailableImage, x + 2, y + 2, null);
+                    g.setColor(occupied ? Color.RED : Color.GREEN); // Outline in the slot's status colour
+                    g.drawRect(x + 1, y + 1, cellSize - 3, cellSize - 3);
+                } else {
+                    g.setColor(occupied ? Color.RED : Color.GREEN);
+                    g.fillRect(x + 1, y + 1, cellSize - 2, cellSize - 2);
+                }
+                if (drawLabels) {
+                    String slotID = parkingSlot.getSlotID();
+                    g.setColor(Color.BLACK);
+                    g.drawString(slotID, x + (cellSize - metrics.stringWidth(slotID)) / 2, y + cellSize - metrics.getDescent() - 1);
+                }
+            }
+        }
+    }
+
+    // CarPark events can arrive on any thread, with the slot locked, so they only mark the map as
+    // changed; a burst of events at the gates is painted once rather than once per event
+
+    @Override
+    public void slotAdded(ParkingSlot parkingSlot) {
+        scheduleRepaint(true); // The map may have grown
+    }
+
+    @Override
+    public void slotsAdded(List<ParkingSlot> parkingSlots) {
+        scheduleRepaint(true);
+    }
+
+    @Override
+    public void slotRemoved(ParkingSlot parkingSlot) {
+        scheduleRepaint(false);
+    }
+
+    @Override
+    public void carParked(ParkingSlot parkingSlot, Car car) {
+        scheduleRepaint(false);
+    }
+
+    @Override
+    public void carLeft(ParkingSlot parkingSlot, Car car) {
+        scheduleRepaint(false);
+    }
+
+    // Queues one repaint for every change made until it runs
+    private void scheduleRepaint(boolean relayout) {
+        if (relayout) {
+            layoutChanged.set(true);
+        }
+        if (repaintPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(repaintTimer::restart);
+        }
+    }
+
+    // Runs on the Swing thread once the repaint delay has passed
+    private void flushRepaint() {
+        repaintPending.set(false); // Changes from here on schedule another repaint
+        if (layoutChanged.getAndSet(false)) {
+            revalidate();
+        }
+        repaint(); // Only the visible slots are painted, so this is as cheap as repainting single cells
+    }
+
+    private int cellSize() {
+        return Math.max(4, (int) Math.round(BASE_CELL_SIZE * zoom));
+    }
+
+    // As many columns as fit across the visible width
+    private int columns() {
+        Container parent = getParent();
+        int width = parent instanceof JViewport ? parent.getWidth() : getWidth();
+        return Math.max(1, width / cellSize());
+    }
+
+    // Scales the icons to the cell size once per zoom level rather than on every paint
+    private void prepareScaledImages(int cellSize) {
+        int size = cellSize - 4;
+        if (size != scaledImageSize) {
+            scaledOccupiedImage = scale(occupiedImage, size);
+            scaledAvailableImage = scale(availableImage, size);
+            scaledImageSize = size;
+        }
+    }
+
+    private static Image scale(Image image, int size) {
+        BufferedImage scaled = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, size, size, null);
+        g.dispose();
+        return scaled;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        carPark.refreshSnapshot(snapshot);
+        int cellSize = cellSize();
+        int columns = columns();
+        int rows = (snapshot.getIndexLimit() + columns - 1) / columns;
+        return new Dimension(columns * cellSize, Math.max(1, rows) * cellSize);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(4 * BASE_CELL_SIZE, 4 * BASE_CELL_SIZE);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return cellSize(); // Scroll one row at a time
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true; // Wrap slots into as many columns as fit, so only vertical scrolling is needed
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+* This class is a read-only record of one parking slot at the moment a query
+* ran: its ID and, if a car is parked there, the car's details and how long it
+* has been parked. CarPark queries return lists of these instead of printing.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+public final class SlotReport {
+    private final String slotID;
+    private final String registrationNumber; // Null when the slot is empty
+    private final String make;
+    private final String model;
+    private final String year;
+    private final long parkedAtMillis; // Epoch milliseconds the car parked, or 0 when the slot is empty
+    private final long dwellMillis; // How long the car had been parked when the query ran
+
+    /**
+     * Creates a report for a slot.
+     *
+     * @param slotID The slot ID.
+     * @param car    The car parked in the slot, or null if it is empty.
+     * @param now    The time the query ran, in epoch milliseconds.
+     */
+    public SlotReport(String slotID, Car car, long now) {
+        this.slotID = slotID;
+        if (car != null) {
+            this.registrationNumber = car.getRegistrationNumber();
+            this.make = car.getMake();
+            this.model = car.getModel();
+            this.year = car.getYear();
+            this.parkedAtMillis = car.getParkedAtMillis();
+            this.dwellMillis = car.getParkedDurationMillis(now);
+        } else {
+            this.registrationNumber = null;
+            this.make = null;
+            this.model = null;
+            this.year = null;
+            this.parkedAtMillis = 0;
+            this.dwellMillis = 0;
+        }
+    }
+
+    /**
+     * Gets the slot ID.
+     *
+     * @return The slot ID.
+     */
+    public String getSlotID() {
+        return slotID;
+    }
+
+    /**
+     * Checks whether a car was parked in the slot.
+     *
+     * @return True if the slot was occupied.
+     */
+    public boolean isOccupied() {
+        return registrationNumber != null;
+    }
+
+    /**
+     * Gets the parked car's registration number.
+     *
+     * @return The registration number, or null if the slot was empty.
+     */
+    public String getRegistrationNumber() {
+        return registrationNumber;
+    }
+
+    /**
+     * Gets the parked car's make.
+     *
+     * @return The make, or null if the slot was empty.
+     */
+    public String getMake() {
+        return make;
+    }
+
+    /**
+     * Gets the parked car's model.
+     *
+     * @return The model, or null if the slot was empty.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Gets the parked car's year.
+     *
+     * @return The year, or null if the slot was empty.
+     */
+    public String getYear() {
+        return year;
+    }
+
+    /**
+     * Gets when the car parked.
+     *
+     * @return The parking time in epoch milliseconds, or 0 if the slot was empty.
+     */
+    public long getParkedAtMillis() {
+        return parkedAtMillis;
+    }
+
+    /**
+     * Gets how long the car had been parked when the query ran.
+     *
+     * @return The parked duration in milliseconds, or 0 if the slot was empty.
+     */
+    public long getDwellMillis() {
+        return dwellMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (!isOccupied()) {
+            return "Slot ID: " + slotID + ", Status: Empty";
+        }
+        return "Slot ID: " + slotID + ", Status: Occupied, Registration: " + registrationNumber
+                + ", Make: " + make + ", Model: " + model + ", Year: " + year
+                + ", Parking Time: " + CarPark.formatDuration(dwellMillis);
+    }
+}
